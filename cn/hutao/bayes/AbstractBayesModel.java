@@ -0,0 +1,220 @@
+package cn.hutao.bayes;
+
+import java.util.Collection;
+
+/**
+ * The common part of the immutable, inference-only naive Bayes models frozen
+ * from a {@link Classifier}: the feature dictionary, the categories with a
+ * positive count and their log priors, and the double precision log
+ * likelihoods the concrete models store in their own representation.  The
+ * models differ only in how they store and sum up the log likelihoods of
+ * the features.  The log likelihoods are those the classifier sums up when
+ * classifying at the time of freezing: a {@link BayesClassifier} contributes
+ * them in its {@link ScoringMode} or from its
+ * {@link BayesClassifier#setFeatureProbability custom calculator}, which is
+ * asked once per known feature while freezing.  Later changes to the mode or
+ * the calculator do not affect the model.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public abstract class AbstractBayesModel<F, C> {
+
+    /**
+     * The dictionary the feature ids were assigned by.
+     */
+    final FeatureDictionary<F> features;
+
+    /**
+     * The categories with a positive count, in category id order.
+     */
+    final Object[] categories;
+
+    /**
+     * The category id of each category index.
+     */
+    private final int[] categoryIds;
+
+    /**
+     * The log prior of each category.
+     */
+    final double[] logPriors;
+
+    /**
+     * The smoothing denominator of each category.
+     */
+    private final double[] denominators;
+
+    /**
+     * The log likelihood of a feature not seen in a category, per category.
+     */
+    final double[] unseenLogLikelihoods;
+
+    /**
+     * Freezes the categories of a classifier.
+     *
+     * @param classifier The classifier.
+     */
+    AbstractBayesModel(Classifier<F, C> classifier) {
+        FeatureDictionary<C> categoryDictionary = classifier.getCategoryDictionary();
+        int[] ids = new int[categoryDictionary.size()];
+        int numCategories = 0;
+        for (int categoryId = 0; categoryId < categoryDictionary.size(); categoryId++) {
+            if (classifier.categoryCount(categoryId) > 0) {
+                ids[numCategories++] = categoryId;
+            }
+        }
+
+        this.features = classifier.copyFeatureDictionary();
+        this.categories = new Object[numCategories];
+        this.categoryIds = new int[numCategories];
+        this.logPriors = new double[numCategories];
+        this.denominators = new double[numCategories];
+        this.unseenLogLikelihoods = new double[numCategories];
+        int vocabularySize = classifier.getVocabularySize();
+        double logCategoriesTotal = Math.log(classifier.getCategoriesTotal());
+        for (int c = 0; c < numCategories; c++) {
+            this.categoryIds[c] = ids[c];
+            this.categories[c] = categoryDictionary.feature(ids[c]);
+            this.logPriors[c] = Math.log(classifier.categoryCount(ids[c]))
+                    - logCategoriesTotal;
+            this.denominators[c] = (double) classifier.categoryFeatureCount(ids[c])
+                    + vocabularySize * Classifier.DEFAULT_LAMBDA;
+            this.unseenLogLikelihoods[c] = Math.log(
+                    (0 + Classifier.DEFAULT_LAMBDA) / this.denominators[c]);
+        }
+
+        if ((long) this.features.size() * numCategories > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Model too large to freeze: "
+                    + this.features.size() + " features, " + numCategories + " categories");
+        }
+    }
+
+    /**
+     * Calculates the double precision log likelihoods of one feature in
+     * every category of the model, to be stored by the concrete model.
+     *
+     * @param classifier The classifier being frozen.
+     * @param featureId The id of the feature.
+     * @param counts Scratch space for the counts of the feature, as long as
+     *    the classifier's category dictionary.
+     * @param logLikelihoods Scratch space for the log likelihoods by
+     *    category id, as long as the counts.
+     * @param row Receives the log likelihoods, indexed by category index.
+     */
+    void featureLogLikelihoods(Classifier<F, C> classifier, int featureId, int[] counts,
+                               double[] logLikelihoods, double[] row) {
+        int numCategories = this.categories.length;
+        if (classifier.totalFeatureCount(featureId) == 0) {
+            System.arraycopy(this.unseenLogLikelihoods, 0, row, 0, numCategories);
+            return;
+        }
+        classifier.scoredLogLikelihoods(featureId, counts, logLikelihoods);
+        for (int c = 0; c < numCategories; c++) {
+            row[c] = logLikelihoods[this.categoryIds[c]];
+        }
+    }
+
+    /**
+     * Retrieves the feature ids the model was frozen with, for use with
+     * {@link #classify(int[])}.
+     *
+     * @param features The features.
+     * @return The ids, {@link FeatureDictionary#UNKNOWN} for unknown features.
+     */
+    public int[] featureIds(Collection<? extends F> features) {
+        return this.features.ids(features);
+    }
+
+    /**
+     * Retrieves the number of categories the model can classify as.
+     *
+     * @return The number of categories.
+     */
+    public int getCategoryCount() {
+        return this.categories.length;
+    }
+
+    /**
+     * Retrieves a category by its index in the model.
+     *
+     * @param index The category index.
+     * @return The category.
+     */
+    @SuppressWarnings("unchecked")
+    public C getCategory(int index) {
+        return (C) this.categories[index];
+    }
+
+    /**
+     * Retrieves the memory taken by the log likelihoods of the features, the
+     * part of the model that grows with the vocabulary.
+     *
+     * @return The size in bytes.
+     */
+    public abstract long getLikelihoodBytes();
+
+    /**
+     * Classifies the given set of features.
+     *
+     * @param features The features to classify.
+     * @return The category most likely, or null if the model knows no
+     *    category.
+     */
+    public Classification<F, C> classify(Collection<F> features) {
+        return this.classify(features, this.features.ids(features));
+    }
+
+    /**
+     * Classifies features already resolved through {@link #featureIds}.
+     *
+     * @param featureIds The ids of the features to classify.
+     * @return The category most likely, or null if the model knows no
+     *    category.
+     */
+    public Classification<F, C> classify(int[] featureIds) {
+        return this.classify(this.features.features(featureIds), featureIds);
+    }
+
+    /**
+     * Classifies a set of features by their ids.
+     *
+     * @param features The features.
+     * @param featureIds The ids of the features.
+     * @return The category most likely, or null.
+     */
+    private Classification<F, C> classify(Collection<F> features, int[] featureIds) {
+        double[] scores = new double[this.categories.length];
+        this.scores(featureIds, scores);
+        int best = -1;
+        double bestScore = 0;
+        for (int c = 0; c < scores.length; c++) {
+            if (best < 0 || scores[c] > bestScore) {
+                best = c;
+                bestScore = scores[c];
+            }
+        }
+        return (best < 0) ? null
+                : new Classification<F, C>(features, this.getCategory(best), bestScore);
+    }
+
+    /**
+     * Calculates the log score of every category, the log prior plus the
+     * log likelihoods of the features.
+     *
+     * @param featureIds The ids of the features.
+     * @param scores Receives the scores, indexed by category index.
+     */
+    abstract void scores(int[] featureIds, double[] scores);
+
+    /**
+     * Checks whether a feature id has a row of log likelihoods.
+     *
+     * @param featureId The feature id.
+     * @return Whether the feature was known when the model was frozen.
+     */
+    boolean isKnown(int featureId) {
+        return featureId >= 0 && featureId < this.features.size();
+    }
+
+}
@@ -0,0 +1,254 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+
+/**
+ * Base for count stores that keep their totals on the heap.  It maintains the
+ * per-feature, per-category and global totals in plain arrays indexed by id;
+ * subclasses only decide how the per-(feature, category) counts are laid out.
+ */
+public abstract class AbstractCountStore implements CountStore {
+
+    /**
+     * Initial capacity of category arrays.
+     */
+    protected static final int INITIAL_CATEGORY_CAPACITY = 8;
+
+    /**
+     * Initial capacity of feature arrays.
+     */
+    protected static final int INITIAL_FEATURE_CAPACITY = 1024;
+
+    /**
+     * The feature counts over all categories, indexed by feature id.
+     */
+    private int[] totalFeatureCount;
+
+    /**
+     * The number of features with a positive total count.
+     */
+    private int distinctFeatureCount;
+
+    /**
+     * The category counts, indexed by category id.
+     */
+    private int[] totalCategoryCount;
+
+    /**
+     * The sum of all feature counts of each category, indexed by category id
+     * and kept up to date on every update.
+     */
+    private int[] categoryFeatureCount;
+
+    /**
+     * The sum of all category counts, kept up to date on every update.
+     */
+    private int categoriesTotal;
+
+    /**
+     * Adds the given delta to the count of a feature in a category.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @param delta The amount to add.
+     */
+    protected abstract void addFeatureCount(int featureId, int categoryId, int delta);
+
+    /**
+     * Forgets all per-(feature, category) counts.
+     */
+    protected abstract void clearFeatureCounts();
+
+    /**
+     * Retrieves how many occurrences of a feature in a category a decrement
+     * may remove.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @return The count that can be removed.
+     */
+    protected int removableFeatureCount(int featureId, int categoryId) {
+        return this.featureCount(featureId, categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId) {
+        this.incrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId, int n) {
+        if (n <= 0) {
+            return;
+        }
+        this.ensureCategory(categoryId);
+        this.addFeatureCount(featureId, categoryId, n);
+        this.categoryFeatureCount[categoryId] += n;
+
+        if (featureId >= this.totalFeatureCount.length) {
+            this.totalFeatureCount = Arrays.copyOf(this.totalFeatureCount,
+                    Math.max(featureId + 1, this.totalFeatureCount.length << 1));
+        }
+        if (this.totalFeatureCount[featureId] == 0) {
+            this.distinctFeatureCount++;
+        }
+        this.totalFeatureCount[featureId] += n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId) {
+        this.decrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId, int n) {
+        int removed = Math.min(n, this.removableFeatureCount(featureId, categoryId));
+        if (removed <= 0) {
+            return;
+        }
+        this.addFeatureCount(featureId, categoryId, -removed);
+        this.categoryFeatureCount[categoryId] -= removed;
+        this.totalFeatureCount[featureId] -= removed;
+        if (this.totalFeatureCount[featureId] == 0) {
+            this.distinctFeatureCount--;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId) {
+        this.ensureCategory(categoryId);
+        this.totalCategoryCount[categoryId]++;
+        this.categoriesTotal++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId, int n) {
+        if (n <= 0) {
+            return;
+        }
+        this.ensureCategory(categoryId);
+        this.totalCategoryCount[categoryId] += n;
+        this.categoriesTotal += n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementCategory(int categoryId) {
+        if (this.categoryCount(categoryId) > 0) {
+            this.totalCategoryCount[categoryId]--;
+            this.categoriesTotal--;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void featureCounts(int featureId, int[] counts) {
+        for (int categoryId = 0; categoryId < counts.length; categoryId++) {
+            counts[categoryId] = this.featureCount(featureId, categoryId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalFeatureCount(int featureId) {
+        return (featureId < this.totalFeatureCount.length)
+                ? this.totalFeatureCount[featureId] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryFeatureCount(int categoryId) {
+        return (categoryId < this.categoryFeatureCount.length)
+                ? this.categoryFeatureCount[categoryId] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryCount(int categoryId) {
+        return (categoryId < this.totalCategoryCount.length)
+                ? this.totalCategoryCount[categoryId] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCategoriesTotal() {
+        return this.categoriesTotal;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctFeatureCount() {
+        return this.distinctFeatureCount;
+    }
+
+    /**
+     * Tells whether the per-(feature, category) counts are exact, which
+     * they are unless a subclass approximates them.
+     *
+     * @return True.
+     */
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.totalFeatureCount = new int[AbstractCountStore.INITIAL_FEATURE_CAPACITY];
+        this.distinctFeatureCount = 0;
+        this.totalCategoryCount = new int[AbstractCountStore.INITIAL_CATEGORY_CAPACITY];
+        this.categoryFeatureCount = new int[AbstractCountStore.INITIAL_CATEGORY_CAPACITY];
+        this.categoriesTotal = 0;
+        this.clearFeatureCounts();
+    }
+
+    /**
+     * Grows the category arrays to hold the given category id.
+     *
+     * @param categoryId The category id.
+     */
+    private void ensureCategory(int categoryId) {
+        if (categoryId >= this.totalCategoryCount.length) {
+            int capacity = Math.max(categoryId + 1, this.totalCategoryCount.length << 1);
+            this.totalCategoryCount = Arrays.copyOf(this.totalCategoryCount, capacity);
+            this.categoryFeatureCount =
+                    Arrays.copyOf(this.categoryFeatureCount, capacity);
+        }
+    }
+
+}
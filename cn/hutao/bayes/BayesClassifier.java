@@ -1,9 +1,17 @@
 package cn.hutao.bayes;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A concrete implementation of the abstract Classifier class.  The Bayes
@@ -13,72 +21,602 @@ import java.util.TreeSet;
  * @param <F> The feature class.
  * @param <C> The category class.
  */
-public class BayesClassifier<F, C> extends Classifier<F, C> {
+public class BayesClassifier<F, C> extends Classifier<F, C>
+        implements BulkFeatureProbability<F, C> {
 
     /**
-     * Calculates the product of all feature probabilities: PROD(P(featI|cat)
+     * The most log likelihoods a batch table holds before the batch is
+     * split, 2 MB of doubles.  It only caps the size of a chunk: the tables
+     * of a chunk are sized by the distinct features it actually contains.
+     */
+    private static final int BATCH_TABLE_BUDGET = 1 << 18;
+
+    /**
+     * The number of categories accumulated together in a batch, so that the
+     * score accumulator of a block stays in the L1 cache.
+     */
+    private static final int CATEGORY_BLOCK = 512;
+
+    /**
+     * The margin, relative to the leading score, by which a category's upper
+     * bound must fall short before pruned classification drops it.  It
+     * absorbs rounding differences between the bound and the exact score.
+     */
+    private static final double PRUNING_SLACK = 1e-9;
+
+    /**
+     * The default number of entries of the log table of
+     * {@link ScoringMode#LOG_TABLE}.
+     */
+    public static final int DEFAULT_LOG_TABLE_SIZE = 1024;
+
+    /**
+     * The per-category values derived from the counts, as of the model
+     * version recorded in it.  Replaced, never modified, so classifying
+     * threads can read it without locking.
+     */
+    private volatile CategoryCache categoryCache;
+
+    /**
+     * The scorer running the inner loops of batch classification.
+     */
+    private volatile CategoryScorer categoryScorer = CategoryScorers.scalar();
+
+    /**
+     * The custom calculator of feature log probabilities, or null to use the
+     * learned counts directly.
+     */
+    private volatile BulkFeatureProbability<F, C> featureProbability;
+
+    /**
+     * How log likelihoods are computed.
+     */
+    private volatile ScoringMode scoringMode = ScoringMode.RATIO;
+
+    /**
+     * log(n + lambda) for every n below the table's length, used by
+     * {@link ScoringMode#LOG_TABLE}.  Replaced, never modified.
+     */
+    private volatile double[] logTable =
+            BayesClassifier.logTable(BayesClassifier.DEFAULT_LOG_TABLE_SIZE);
+
+    /**
+     * The calculator asking {@link #featureWeighedAverage(Object, Object)}
+     * for each category, if a subclass overrides one of the scalar feature
+     * probability methods; null otherwise.
+     */
+    private final BulkFeatureProbability<F, C> overriddenProbability =
+            this.overriddenProbability();
+
+    /**
+     * Constructs a new classifier without any trained knowledge.
+     */
+    public BayesClassifier() {
+        super();
+    }
+
+    /**
+     * Constructs a new classifier without any trained knowledge, keeping its
+     * counts in the given store.
      *
-     * @param features The set of features to use.
-     * @param category The category to test for.
-     * @return The product of all feature probabilities.
+     * @param counts The store for the learned counts.
      */
-    private double featuresProbabilityLogSum(Collection<F> features, C category) {
-        double logSum = 1.0f;
-        for (F feature : features) {
-            logSum += Math.log(this.featureWeighedAverage(feature, category));
+    public BayesClassifier(CountStore counts) {
+        super(counts);
+    }
+
+    /**
+     * Constructs a new classifier without any trained knowledge, keeping its
+     * counts in the given store and its ids in the given dictionaries.
+     *
+     * @param counts The store for the learned counts.
+     * @param featureDictionary The dictionary assigning ids to features.
+     * @param categoryDictionary The dictionary assigning ids to categories.
+     */
+    protected BayesClassifier(CountStore counts, FeatureDictionary<F> featureDictionary,
+                              FeatureDictionary<C> categoryDictionary) {
+        super(counts, featureDictionary, categoryDictionary);
+    }
+
+    /**
+     * Retrieves the custom calculator of feature log probabilities.
+     *
+     * @return The calculator, or null if the learned counts are used
+     *    directly.
+     */
+    public BulkFeatureProbability<F, C> getFeatureProbability() {
+        return this.featureProbability;
+    }
+
+    /**
+     * Sets a custom calculator of feature log probabilities for every
+     * classify method; classifyPruned and classifyAll fall back to
+     * {@link #classify(int[], ClassificationHolder)} while one is set.  It is
+     * asked once per known feature for all categories at once, with the
+     * feature as given to classify or as resolved from its id; features
+     * without any count keep the built-in log probability of an unseen
+     * feature.  Scalar calculators can be plugged in through a
+     * {@link FeatureProbabilityAdapter}.  Changing the calculator advances
+     * the model version.
+     * <p>
+     * A subclass overriding {@link #featureProbability(Object, Object)} or
+     * another of the scalar feature probability methods is scored the same
+     * way, through {@link #featureWeighedAverage(Object, Object)}, unless a
+     * calculator is set, which takes precedence as it always did.
+     *
+     * @param featureProbability The calculator, or null to use the learned
+     *    counts directly.
+     */
+    public void setFeatureProbability(BulkFeatureProbability<F, C> featureProbability) {
+        this.featureProbability = featureProbability;
+        this.invalidate();
+    }
+
+    /**
+     * Calculates the smoothed log P(feature|category) of one feature for
+     * every category from the learned counts, the same values classify sums
+     * up.
+     *
+     * @param feature The feature.
+     * @param logProbabilities Receives the log probability of category id
+     *    i at index i.
+     */
+    @Override
+    public void featureLogProbabilities(F feature, double[] logProbabilities) {
+        int featureId = this.featureId(feature);
+        CategoryCache cache = this.categoryCache();
+        ScoringMode mode = this.scoringMode;
+        double[] table = this.logTable;
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            int count = this.featureCount(featureId, categoryId);
+            logProbabilities[categoryId] = (categoryId < cache.denominators.length)
+                    ? BayesClassifier.logLikelihood(count, categoryId, cache, mode, table)
+                    : Math.log(((double) count + Classifier.DEFAULT_LAMBDA)
+                            / (cache.vocabularySize * Classifier.DEFAULT_LAMBDA));
+        }
+    }
+
+    /**
+     * Calculates the log likelihoods of a feature the way classify does,
+     * from the custom calculator if one is set and in the scoring mode
+     * otherwise.
+     *
+     * @param featureId The feature id.
+     * @param counts Scratch space for the counts of the feature, as long as
+     *    the category dictionary.
+     * @param logLikelihoods Receives the log likelihoods, indexed by
+     *    category id, as long as the counts.
+     */
+    @Override
+    void scoredLogLikelihoods(int featureId, int[] counts, double[] logLikelihoods) {
+        BulkFeatureProbability<F, C> calculator = this.scoringCalculator();
+        if (calculator != null) {
+            calculator.featureLogProbabilities(this.calculatorFeature(featureId), logLikelihoods);
+            return;
+        }
+        CategoryCache cache = this.categoryCache();
+        this.featureCounts(featureId, counts);
+        BayesClassifier.logLikelihoods(counts, Math.min(counts.length, cache.denominators.length),
+                cache, this.scoringMode, this.logTable, logLikelihoods, 0);
+    }
+
+    /**
+     * Retrieves the calculator classify asks for the log likelihoods of
+     * known features: the one set, or else the one going through an
+     * overridden scalar feature probability.
+     *
+     * @return The calculator, or null if the learned counts are used
+     *    directly.
+     */
+    BulkFeatureProbability<F, C> scoringCalculator() {
+        BulkFeatureProbability<F, C> calculator = this.featureProbability;
+        return (calculator != null) ? calculator : this.overriddenProbability;
+    }
+
+    /**
+     * Resolves a feature id to the feature handed to the calculator when
+     * only the id is known.
+     *
+     * @param featureId The feature id.
+     * @return The feature.
+     */
+    F calculatorFeature(int featureId) {
+        return this.getFeatureDictionary().feature(featureId);
+    }
+
+    /**
+     * Builds a calculator asking {@link #featureWeighedAverage(Object, Object)}
+     * for the probability of a feature in each category, if the class
+     * overrides one of the scalar feature probability methods that the
+     * original classify went through.
+     *
+     * @return The calculator, or null if none of the methods is overridden.
+     */
+    private BulkFeatureProbability<F, C> overriddenProbability() {
+        Class<?> type = this.getClass();
+        try {
+            if (type.getMethod("featureWeighedAverage", Object.class, Object.class)
+                            .getDeclaringClass() == Classifier.class
+                    && type.getMethod("featureProbability", Object.class, Object.class)
+                            .getDeclaringClass() == Classifier.class
+                    && type.getMethod("featureProbability", Object.class, Object.class,
+                            double.class).getDeclaringClass() == Classifier.class
+                    && type.getMethod("featureProbability", int.class, int.class,
+                            double.class).getDeclaringClass() == Classifier.class) {
+                return null;
+            }
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        return new BulkFeatureProbability<F, C>() {
+
+            @Override
+            public void featureLogProbabilities(F feature, double[] logProbabilities) {
+                FeatureDictionary<C> categories = BayesClassifier.this.getCategoryDictionary();
+                for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+                    C category = categories.feature(categoryId);
+                    logProbabilities[categoryId] = (category == null)
+                            ? Double.NEGATIVE_INFINITY
+                            : Math.log(BayesClassifier.this.featureWeighedAverage(feature,
+                                    category));
+                }
+            }
+        };
+    }
+
+    /**
+     * Retrieves how log likelihoods are computed.
+     *
+     * @return The scoring mode.
+     */
+    public ScoringMode getScoringMode() {
+        return this.scoringMode;
+    }
+
+    /**
+     * Sets how log likelihoods are computed by every classify method.  The
+     * modes differ in the last bits of the scores only.  Features without
+     * any count score with the same cached log likelihood of an unseen
+     * feature in every mode.  Changing the mode advances the model version.
+     *
+     * @param scoringMode The scoring mode.
+     */
+    public void setScoringMode(ScoringMode scoringMode) {
+        if (scoringMode == null) {
+            throw new IllegalArgumentException("scoringMode must not be null");
+        }
+        this.scoringMode = scoringMode;
+        this.invalidate();
+    }
+
+    /**
+     * Retrieves the number of small counts whose log is looked up rather
+     * than computed in {@link ScoringMode#LOG_TABLE}.
+     *
+     * @return The size of the log table.
+     */
+    public int getLogTableSize() {
+        return this.logTable.length;
+    }
+
+    /**
+     * Retrieves the log table of {@link ScoringMode#LOG_TABLE}, which is
+     * replaced rather than modified when its size changes.
+     *
+     * @return The table of log(n + lambda).
+     */
+    double[] getLogTable() {
+        return this.logTable;
+    }
+
+    /**
+     * Sets the number of small counts whose log is looked up rather than
+     * computed in {@link ScoringMode#LOG_TABLE}.  Larger counts fall back to
+     * {@link Math#log(double)}, so the size trades memory for speed only.
+     * Changing the size advances the model version, since the two ways of
+     * computing a log likelihood may differ in the last bits.
+     *
+     * @param size The size of the log table.
+     */
+    public void setLogTableSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.logTable = BayesClassifier.logTable(size);
+        this.invalidate();
+    }
+
+    /**
+     * Builds the table of log(n + lambda).
+     *
+     * @param size The number of entries.
+     * @return The table.
+     */
+    private static double[] logTable(int size) {
+        double[] table = new double[size];
+        for (int n = 0; n < size; n++) {
+            table[n] = Math.log((double) n + Classifier.DEFAULT_LAMBDA);
+        }
+        return table;
+    }
+
+    /**
+     * Calculates the smoothed log likelihood of a feature count in a
+     * category.
+     *
+     * @param count The count of the feature in the category.
+     * @param categoryId The id of the category.
+     * @param cache The per-category values to score with.
+     * @param mode How to compute the log likelihood.
+     * @param table The log table of {@link ScoringMode#LOG_TABLE}.
+     * @return The log likelihood.
+     */
+    private static double logLikelihood(int count, int categoryId, CategoryCache cache,
+                                        ScoringMode mode, double[] table) {
+        switch (mode) {
+        case LOG_TABLE:
+            return ((count < table.length) ? table[count]
+                    : Math.log((double) count + Classifier.DEFAULT_LAMBDA))
+                    - cache.logDenominators[categoryId];
+        case LOG_DIFFERENCE:
+            return Math.log((double) count + Classifier.DEFAULT_LAMBDA)
+                    - cache.logDenominators[categoryId];
+        default:
+            return Math.log(((double) count + Classifier.DEFAULT_LAMBDA)
+                    / cache.denominators[categoryId]);
+        }
+    }
+
+    /**
+     * Calculates the smoothed log likelihoods of one feature's counts in the
+     * first categories, with the mode's loop hoisted out of the switch.
+     *
+     * @param counts The counts of the feature, indexed by category id.
+     * @param numCategories The number of categories.
+     * @param cache The per-category values to score with.
+     * @param mode How to compute the log likelihoods.
+     * @param table The log table of {@link ScoringMode#LOG_TABLE}.
+     * @param logLikelihoods Receives the log likelihoods.
+     * @param offset The index of category 0 in the receiving array.
+     */
+    private static void logLikelihoods(int[] counts, int numCategories, CategoryCache cache,
+                                       ScoringMode mode, double[] table,
+                                       double[] logLikelihoods, int offset) {
+        switch (mode) {
+        case LOG_TABLE:
+            double[] logDenominators = cache.logDenominators;
+            for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                int count = counts[categoryId];
+                logLikelihoods[offset + categoryId] = ((count < table.length) ? table[count]
+                        : Math.log((double) count + Classifier.DEFAULT_LAMBDA))
+                        - logDenominators[categoryId];
+            }
+            break;
+        case LOG_DIFFERENCE:
+            for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                logLikelihoods[offset + categoryId] =
+                        Math.log((double) counts[categoryId] + Classifier.DEFAULT_LAMBDA)
+                                - cache.logDenominators[categoryId];
+            }
+            break;
+        default:
+            for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                logLikelihoods[offset + categoryId] = Math.log(
+                        ((double) counts[categoryId] + Classifier.DEFAULT_LAMBDA)
+                                / cache.denominators[categoryId]);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the scorer used by {@link #classifyAll(List)}.
+     *
+     * @return The scorer.
+     */
+    public CategoryScorer getCategoryScorer() {
+        return this.categoryScorer;
+    }
+
+    /**
+     * Sets the scorer used by {@link #classifyAll(List)}, for example the
+     * SIMD one from {@link CategoryScorers#fastest()}.  All scorers give the
+     * same results.
+     *
+     * @param categoryScorer The scorer.
+     */
+    public void setCategoryScorer(CategoryScorer categoryScorer) {
+        if (categoryScorer == null) {
+            throw new IllegalArgumentException("categoryScorer must not be null");
+        }
+        this.categoryScorer = categoryScorer;
+    }
+
+    /**
+     * Retrieves the per-category values for the current model version.  If
+     * the model changed since they were last computed, only the categories
+     * whose counts changed are recomputed, unless the vocabulary size changed
+     * too, which affects every denominator.  A classifier that is only read
+     * from never recomputes anything.
+     *
+     * @return The cached values.
+     */
+    private CategoryCache categoryCache() {
+        CategoryCache cached = this.categoryCache;
+        long version = this.getModelVersion();
+        int numCategories = this.getCategoryDictionary().size();
+        if (cached != null && cached.version == version
+                && cached.denominators.length >= numCategories) {
+            return cached;
+        }
+
+        int vocabularySize = this.getVocabularySize();
+        boolean refreshAll = cached == null || cached.vocabularySize != vocabularySize;
+        double[] logCategoryCounts;
+        double[] denominators;
+        double[] logDenominators;
+        double[] unseenLogLikelihoods;
+        if (cached == null) {
+            logCategoryCounts = new double[numCategories];
+            denominators = new double[numCategories];
+            logDenominators = new double[numCategories];
+            unseenLogLikelihoods = new double[numCategories];
+        } else {
+            logCategoryCounts = Arrays.copyOf(cached.logCategoryCounts, numCategories);
+            denominators = Arrays.copyOf(cached.denominators, numCategories);
+            logDenominators = Arrays.copyOf(cached.logDenominators, numCategories);
+            unseenLogLikelihoods = Arrays.copyOf(cached.unseenLogLikelihoods, numCategories);
+        }
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            if (refreshAll || categoryId >= cached.denominators.length
+                    || this.getCategoryVersion(categoryId) > cached.version) {
+                logCategoryCounts[categoryId] = Math.log(this.categoryCount(categoryId));
+                denominators[categoryId] = (double) this.categoryFeatureCount(categoryId)
+                        + vocabularySize * Classifier.DEFAULT_LAMBDA;
+                logDenominators[categoryId] = Math.log(denominators[categoryId]);
+                unseenLogLikelihoods[categoryId] = Math.log(
+                        (0 + Classifier.DEFAULT_LAMBDA) / denominators[categoryId]);
+            }
+        }
+        CategoryCache refreshed = new CategoryCache(version, vocabularySize,
+                Math.log(this.getCategoriesTotal()), logCategoryCounts, denominators,
+                logDenominators, unseenLogLikelihoods);
+        this.categoryCache = refreshed;
+        return refreshed;
+    }
+
+    /**
+     * Calculates the product of all feature probabilities, PROD(P(featI|cat),
+     * as a log sum for every category at once.  Features are visited in the
+     * outer loop so that each feature's counts in all categories are fetched
+     * together.  A feature occurring n times adds n times its log
+     * probability.  Unknown features, and features whose counts were all
+     * forgotten, add the cached log probability of an unseen feature without
+     * fetching any counts.  If a custom calculator is set, it supplies the
+     * log probabilities of the other features.
+     *
+     * @param features The features the ids were resolved from, in the same
+     *    order, for the calculator, or null to resolve the ids through
+     *    {@link #calculatorFeature(int)}.
+     * @param featureIds The ids of the features to use.
+     * @param frequencies The number of occurrences of each feature, or null
+     *    if every feature occurs once.
+     * @param numFeatures The number of ids to use from the array.
+     * @param numCategories The number of category ids to score.
+     * @param cache The per-category values to score with.
+     * @param scratch The holder whose scratch arrays receive the log sums,
+     *    indexed by category id.
+     */
+    private void featuresProbabilityLogSums(Collection<? extends F> features, int[] featureIds,
+                                            int[] frequencies, int numFeatures,
+                                            int numCategories, CategoryCache cache,
+                                            ClassificationHolder scratch) {
+        scratch.ensureCategories(numCategories);
+        double[] logSums = scratch.logSums;
+        double[] denominators = cache.denominators;
+        int[] counts = scratch.counts;
+        ScoringMode mode = this.scoringMode;
+        double[] table = this.logTable;
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            logSums[categoryId] = 1.0f;
+        }
+        double[] unseen = cache.unseenLogLikelihoods;
+        BulkFeatureProbability<F, C> calculator = this.scoringCalculator();
+        Iterator<? extends F> iterator = (calculator != null && features != null)
+                ? features.iterator() : null;
+        for (int i = 0; i < numFeatures; i++) {
+            F feature = (iterator == null) ? null : iterator.next();
+            int frequency = (frequencies == null) ? 1 : frequencies[i];
+            if (this.totalFeatureCount(featureIds[i]) == 0) {
+                for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                    logSums[categoryId] += (frequency == 1)
+                            ? unseen[categoryId] : frequency * unseen[categoryId];
+                }
+                continue;
+            }
+            if (calculator != null || mode != ScoringMode.RATIO) {
+                double[] row = scratch.row;
+                if (calculator != null) {
+                    calculator.featureLogProbabilities((iterator == null)
+                            ? this.calculatorFeature(featureIds[i]) : feature, row);
+                } else {
+                    this.featureCounts(featureIds[i], counts);
+                    BayesClassifier.logLikelihoods(counts, numCategories, cache, mode, table,
+                            row, 0);
+                }
+                for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                    logSums[categoryId] += (frequency == 1)
+                            ? row[categoryId] : frequency * row[categoryId];
+                }
+                continue;
+            }
+            this.featureCounts(featureIds[i], counts);
+            if (frequency == 1) {
+                for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                    logSums[categoryId] += Math.log(
+                            ((double) counts[categoryId] + Classifier.DEFAULT_LAMBDA)
+                                    / denominators[categoryId]);
+                }
+            } else {
+                for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                    logSums[categoryId] += frequency * Math.log(
+                            ((double) counts[categoryId] + Classifier.DEFAULT_LAMBDA)
+                                    / denominators[categoryId]);
+                }
+            }
         }
-        return logSum;
     }
 
     /**
      * Calculates the probability that the features can be classified as the
-     * category given.
+     * category given.  The log prior is taken as the difference of the
+     * cached logs of the category count and the categories total.
      *
-     * @param features The set of features to use.
-     * @param category The category to test for.
+     * @param featuresLogSum The feature log sum of the category.
+     * @param categoryId The id of the category to test for.
+     * @param cache The per-category values to score with.
      * @return The probability that the features can be classified as the
      *    category.
      */
-    private double categoryProbability(Collection<F> features, C category) {
-        return Math.log(((double) this.categoryCount(category)
-                    / (double) this.getCategoriesTotal()))
-                + featuresProbabilityLogSum(features, category);
+    private static double categoryProbability(double featuresLogSum, int categoryId,
+                                              CategoryCache cache) {
+        return (cache.logCategoryCounts[categoryId] - cache.logCategoriesTotal)
+                + featuresLogSum;
     }
 
     /**
-     * Retrieves a sorted Set of probabilities that the given set
-     * of features is classified as the available categories.
+     * Scores the given set of features against every known category.
      *
      * @param features The set of features to use.
-     * @return A sorted Set of category-probability-entries.
+     * @param featureIds The ids of the features, resolved once up front.
+     * @return The unsorted result view.
      */
-    private SortedSet<Classification<F, C>> categoryProbabilities(Collection<F> features) {
-
-        /*
-         * Sort the set according to the possibilities. Because we have to sort
-         * by the mapped value and not by the mapped key, we can not use a
-         * sorted tree (TreeMap) and we have to use a set-entry approach to
-         * achieve the desired functionality. A custom comparator is therefore
-         * needed.
-         */
-        SortedSet<Classification<F, C>> probabilities =
-                new TreeSet<Classification<F, C>>(new Comparator<Classification<F, C>>() {
-
-                    @Override
-                    public int compare(Classification<F, C> o1, Classification<F, C> o2) {
-                        int toReturn = Double.compare(o1.getProbability(), o2.getProbability());
-                        if ((toReturn == 0) && !o1.getCategory().equals(o2.getCategory())) {
-                            toReturn = -1;
-                        }
-                        return toReturn;
-                    }
-                });
-
-        for (C category : this.getCategories()) {
-            probabilities.add(new Classification<F, C>(
-                    features, category, this.categoryProbability(features, category)));
+    private ClassificationResult<F, C> categoryProbabilities(Collection<F> features,
+                                                             int[] featureIds) {
+        FeatureDictionary<C> categories = this.getCategoryDictionary();
+        int numCategories = categories.size();
+        CategoryCache cache = this.categoryCache();
+        ClassificationHolder scratch = new ClassificationHolder();
+        this.featuresProbabilityLogSums(features, featureIds, null, featureIds.length,
+                numCategories, cache, scratch);
+        int known = 0;
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            if (this.categoryCount(categoryId) > 0) {
+                known++;
+            }
+        }
+        Object[] knownCategories = new Object[known];
+        int[] categoryIds = new int[known];
+        double[] scores = new double[known];
+        int i = 0;
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            if (this.categoryCount(categoryId) > 0) {
+                knownCategories[i] = categories.feature(categoryId);
+                categoryIds[i] = categoryId;
+                scores[i++] = BayesClassifier.categoryProbability(
+                        scratch.logSums[categoryId], categoryId, cache);
+            }
         }
-        return probabilities;
+        return new ClassificationResult<F, C>(features, knownCategories, categoryIds, scores);
     }
 
     /**
@@ -88,22 +626,721 @@ public class BayesClassifier<F, C> extends Classifier<F, C> {
      */
     @Override
     public Classification<F, C> classify(Collection<F> features) {
-        SortedSet<Classification<F, C>> probabilites = this.categoryProbabilities(features);
+        return this.classify(features, this.featureIds(features), true);
+    }
+
+    /**
+     * Classifies features already resolved through the feature dictionary.
+     *
+     * @return The category the set of features is classified as.
+     */
+    @Override
+    public Classification<F, C> classify(int[] featureIds) {
+        return this.classify(this.getFeatureDictionary().features(featureIds), featureIds,
+                false);
+    }
+
+    /**
+     * Classifies the given set of features by their ids.
+     *
+     * @param features The set of features.
+     * @param featureIds The ids of the features.
+     * @param byFeatures Whether the features were given rather than resolved
+     *    from the ids, so that they can be handed to a calculator.
+     * @return The category the set of features is classified as.
+     */
+    private Classification<F, C> classify(Collection<F> features, int[] featureIds,
+                                          boolean byFeatures) {
+        ClassificationHolder result = new ClassificationHolder();
+        if (this.classify(byFeatures ? features : null, featureIds, null, featureIds.length,
+                result)) {
+            return new Classification<F, C>(features,
+                    this.getCategoryDictionary().feature(result.getCategoryId()),
+                    result.getProbability());
+        }
+        return null;
+    }
+
+    /**
+     * Classifies features already resolved through the feature dictionary
+     * into a reusable holder.  The best category is tracked in primitives
+     * while scoring, and all scratch space is taken from the holder, so once
+     * the holder has grown to the number of categories this call allocates
+     * nothing.  Ties go to the category with the lowest id, as in
+     * {@link #classify(Collection)}.
+     *
+     * @param featureIds The ids of the features to classify.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    public boolean classify(int[] featureIds, ClassificationHolder result) {
+        return this.classify(null, featureIds, null, featureIds.length, result);
+    }
+
+    /**
+     * Classifies the given set of features into a reusable holder.  The
+     * features are resolved into the holder's scratch space, so apart from
+     * iterating the collection nothing is allocated once the holder has
+     * grown.
+     *
+     * @param features The features to classify.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    public boolean classify(Collection<F> features, ClassificationHolder result) {
+        result.ensureFeatures(features.size());
+        int numFeatures = 0;
+        for (F feature : features) {
+            result.featureIds[numFeatures++] = this.featureId(feature);
+        }
+        return this.classify(features, result.featureIds, null, numFeatures, result);
+    }
+
+    /**
+     * Classifies features given with their term frequencies.  Each distinct
+     * feature is looked up once and adds n times its log probability, so the
+     * result equals classifying a collection with every feature repeated n
+     * times, up to rounding of the scores.
+     *
+     * @param featureCounts The number of occurrences of each feature, all
+     *    positive.
+     * @return The category most likely, or null if no category is known.
+     */
+    public Classification<F, C> classify(Map<F, Integer> featureCounts) {
+        ClassificationHolder result = new ClassificationHolder();
+        if (this.classify(featureCounts, result)) {
+            return new Classification<F, C>(featureCounts.keySet(),
+                    this.getCategoryDictionary().feature(result.getCategoryId()),
+                    result.getProbability());
+        }
+        return null;
+    }
+
+    /**
+     * Classifies features given with their term frequencies into a reusable
+     * holder.
+     *
+     * @param featureCounts The number of occurrences of each feature, all
+     *    positive.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    public boolean classify(Map<F, Integer> featureCounts, ClassificationHolder result) {
+        result.ensureFeatures(featureCounts.size());
+        int numFeatures = 0;
+        for (Map.Entry<F, Integer> entry : featureCounts.entrySet()) {
+            int count = entry.getValue();
+            Classifier.checkCount(count);
+            result.featureIds[numFeatures] = this.featureId(entry.getKey());
+            result.frequencies[numFeatures++] = count;
+        }
+        return this.classify(featureCounts.keySet(), result.featureIds, result.frequencies,
+                numFeatures, result);
+    }
+
+    /**
+     * Classifies features already resolved through the feature dictionary,
+     * given with their term frequencies, into a reusable holder.
+     *
+     * @param featureIds The ids of the features to classify.
+     * @param featureCounts The number of occurrences of the feature with the
+     *    same index, all positive.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    public boolean classify(int[] featureIds, int[] featureCounts, ClassificationHolder result) {
+        if (featureIds.length != featureCounts.length) {
+            throw new IllegalArgumentException("Got " + featureIds.length + " feature ids but "
+                    + featureCounts.length + " counts");
+        }
+        for (int count : featureCounts) {
+            Classifier.checkCount(count);
+        }
+        return this.classify(null, featureIds, featureCounts, featureIds.length, result);
+    }
+
+    /**
+     * Finds the best category for the first ids of the given array.
+     *
+     * @param features The features the ids were resolved from, in the same
+     *    order, or null if only the ids were given.
+     * @param featureIds The ids of the features to classify.
+     * @param frequencies The number of occurrences of each feature, or null
+     *    if every feature occurs once.
+     * @param numFeatures The number of ids to use.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    private boolean classify(Collection<? extends F> features, int[] featureIds,
+                             int[] frequencies, int numFeatures, ClassificationHolder result) {
+        int numCategories = this.getCategoryDictionary().size();
+        CategoryCache cache = this.categoryCache();
+        this.featuresProbabilityLogSums(features, featureIds, frequencies, numFeatures,
+                numCategories, cache, result);
+        int best = FeatureDictionary.UNKNOWN;
+        double bestProbability = 0;
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            if (this.categoryCount(categoryId) > 0) {
+                double probability = BayesClassifier.categoryProbability(
+                        result.logSums[categoryId], categoryId, cache);
+                if (best == FeatureDictionary.UNKNOWN || probability > bestProbability) {
+                    best = categoryId;
+                    bestProbability = probability;
+                }
+            }
+        }
+        result.set(best, bestProbability);
+        return best != FeatureDictionary.UNKNOWN;
+    }
 
-        if (probabilites.size() > 0) {
-            return probabilites.last();
+    /**
+     * Classifies the given set of features, skipping work on categories that
+     * cannot win.  Returns the same category and score as
+     * {@link #classify(Collection)}.
+     *
+     * @param features The features to classify.
+     * @return The category most likely, or null if no category is known.
+     * @see #classifyPruned(int[], ClassificationHolder)
+     */
+    public Classification<F, C> classifyPruned(Collection<F> features) {
+        if (this.scoringCalculator() != null) {
+            return this.classify(features);
+        }
+        int[] featureIds = this.featureIds(features);
+        ClassificationHolder result = new ClassificationHolder();
+        if (this.classifyPruned(featureIds, result)) {
+            return new Classification<F, C>(features,
+                    this.getCategoryDictionary().feature(result.getCategoryId()),
+                    result.getProbability());
         }
         return null;
     }
 
+    /**
+     * Classifies features already resolved through the feature dictionary,
+     * skipping work on categories that cannot win.  Each feature's log
+     * likelihood in any category is bounded from above by
+     * log((total count of the feature + lambda) / smallest denominator).
+     * Categories are scored one at a time, most probable first, and a
+     * category is dropped as soon as its partial score plus the bounds of
+     * its remaining features falls below the leader's score.  Categories
+     * that are not dropped are summed in the same order as by
+     * {@link #classify(int[], ClassificationHolder)}, so the winner and its
+     * score are exactly the same, ties going to the lowest id.  This pays
+     * off with many categories and a clear leader; with few categories the
+     * exhaustive, feature-major path is faster.  The bound relies on no
+     * count exceeding its feature's total, which a store that is not
+     * {@link CountStore#isExact() exact}, such as a
+     * {@link CountMinSketchCountStore}, does not guarantee, nor a custom
+     * {@link #setFeatureProbability calculator}, so with either every
+     * category is scored as by {@link #classify(int[], ClassificationHolder)}.
+     *
+     * @param featureIds The ids of the features to classify.
+     * @param result The holder receiving the category id and log score.
+     * @return Whether a category was found.
+     */
+    public boolean classifyPruned(int[] featureIds, ClassificationHolder result) {
+        if (this.scoringCalculator() != null || !this.hasExactCounts()) {
+            return this.classify(featureIds, result);
+        }
+        CategoryCache cache = this.categoryCache();
+        int[] categories = this.categoriesByPrior(cache);
+        int numFeatures = featureIds.length;
+        result.ensureFeatures(numFeatures + 1);
+        double[] bounds = result.bounds;
+        int[] totals = result.frequencies;
+        bounds[numFeatures] = 0;
+        for (int i = numFeatures - 1; i >= 0; i--) {
+            totals[i] = this.totalFeatureCount(featureIds[i]);
+            double bound = Math.log(((double) totals[i]
+                    + Classifier.DEFAULT_LAMBDA) / cache.minDenominator);
+            if (cache.vocabularySize > 0) {
+                bound = Math.min(0, bound);
+            }
+            bounds[i] = bounds[i + 1] + bound;
+        }
+
+        int best = FeatureDictionary.UNKNOWN;
+        double bestProbability = 0;
+        double threshold = Double.NEGATIVE_INFINITY;
+        ScoringMode mode = this.scoringMode;
+        double[] table = this.logTable;
+        for (int categoryId : categories) {
+            double logPrior = cache.logCategoryCounts[categoryId] - cache.logCategoriesTotal;
+            double logSum = 1.0f;
+            int i = 0;
+            while (i < numFeatures && logPrior + logSum + bounds[i] >= threshold) {
+                logSum += (totals[i] == 0)
+                        ? cache.unseenLogLikelihoods[categoryId]
+                        : BayesClassifier.logLikelihood(
+                                this.featureCount(featureIds[i], categoryId),
+                                categoryId, cache, mode, table);
+                i++;
+            }
+            if (i < numFeatures) {
+                continue;
+            }
+            double probability = BayesClassifier.categoryProbability(logSum, categoryId, cache);
+            if (best == FeatureDictionary.UNKNOWN || probability > bestProbability
+                    || (probability == bestProbability && categoryId < best)) {
+                best = categoryId;
+                bestProbability = probability;
+                threshold = probability
+                        - BayesClassifier.PRUNING_SLACK * (1 + Math.abs(probability));
+            }
+        }
+        result.set(best, bestProbability);
+        return best != FeatureDictionary.UNKNOWN;
+    }
+
+    /**
+     * Retrieves the ids of the categories with a positive count, by
+     * decreasing prior, so that pruned classification finds a strong leader
+     * early.  Computed once per cache.
+     *
+     * @param cache The per-category values.
+     * @return The category ids.
+     */
+    private int[] categoriesByPrior(final CategoryCache cache) {
+        int[] ordered = cache.categoriesByPrior;
+        if (ordered != null) {
+            return ordered;
+        }
+        List<Integer> active = new ArrayList<Integer>();
+        double minDenominator = Double.POSITIVE_INFINITY;
+        for (int categoryId = 0; categoryId < cache.denominators.length; categoryId++) {
+            if (this.categoryCount(categoryId) > 0) {
+                active.add(categoryId);
+                minDenominator = Math.min(minDenominator, cache.denominators[categoryId]);
+            }
+        }
+        Collections.sort(active, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int toReturn = Double.compare(cache.logCategoryCounts[o2],
+                        cache.logCategoryCounts[o1]);
+                return (toReturn == 0) ? o1.compareTo(o2) : toReturn;
+            }
+        });
+        ordered = new int[active.size()];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = active.get(i);
+        }
+        cache.minDenominator = minDenominator;
+        cache.categoriesByPrior = ordered;
+        return ordered;
+    }
+
+    /**
+     * Classifies a batch of feature sets.  The distinct features of the
+     * batch are resolved once and their log likelihoods in every category
+     * computed once into a shared table, so a feature occurring in many
+     * documents costs one lookup per category instead of one per document.
+     * Scores are then accumulated per document over blocks of categories,
+     * using the {@link #getCategoryScorer() category scorer}.
+     * Large batches are processed in chunks whose table stays within a fixed
+     * budget.  Every document gets the category and score that
+     * {@link #classify(Collection)} would give it; with a custom
+     * {@link #setFeatureProbability calculator} set, the documents are
+     * classified one by one.
+     *
+     * @param documents The feature sets to classify.
+     * @return The id of the best category of each document, to be resolved
+     *    through the category dictionary, or
+     *    {@link FeatureDictionary#UNKNOWN} if no category is known.
+     */
+    public int[] classifyAll(List<? extends Collection<F>> documents) {
+        int[] result = new int[documents.size()];
+        this.classifyAll(documents, 0, documents.size(), this.categoryCache(), result);
+        return result;
+    }
+
+    /**
+     * Classifies a batch of feature sets in parallel, splitting it into one
+     * contiguous slice per thread of the given executor's work.  Each slice
+     * is classified as by {@link #classifyAll(List)}; the classifier must not
+     * be trained while the batch runs.
+     *
+     * @param documents The feature sets to classify.
+     * @param executor The executor to run the slices on.
+     * @param parallelism The number of slices to split the batch into.
+     * @return The id of the best category of each document, or
+     *    {@link FeatureDictionary#UNKNOWN} if no category is known.
+     */
+    public int[] classifyAll(final List<? extends Collection<F>> documents,
+                             ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        final int[] result = new int[documents.size()];
+        final CategoryCache cache = this.categoryCache();
+        int slices = Math.max(1, Math.min(parallelism, documents.size()));
+        List<Future<?>> futures = new ArrayList<Future<?>>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            final int from = (int) ((long) documents.size() * slice / slices);
+            final int to = (int) ((long) documents.size() * (slice + 1) / slices);
+            futures.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    BayesClassifier.this.classifyAll(documents, from, to, cache, result);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while classifying a batch", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Batch classification failed", cause);
+        }
+        return result;
+    }
+
+    /**
+     * Classifies a slice of a batch, chunk by chunk.
+     *
+     * @param documents The feature sets of the batch.
+     * @param from The index of the first document of the slice.
+     * @param to The index after the last document of the slice.
+     * @param cache The per-category values to score with.
+     * @param result Receives the best category id of each document.
+     */
+    private void classifyAll(List<? extends Collection<F>> documents, int from, int to,
+                             CategoryCache cache, int[] result) {
+        if (this.scoringCalculator() != null) {
+            ClassificationHolder holder = new ClassificationHolder();
+            for (int d = from; d < to; d++) {
+                result[d] = this.classify(documents.get(d), holder)
+                        ? holder.getCategoryId() : FeatureDictionary.UNKNOWN;
+            }
+            return;
+        }
+        int numCategories = Math.min(this.getCategoryDictionary().size(),
+                cache.denominators.length);
+        int rowBudget = Math.max(1, BayesClassifier.BATCH_TABLE_BUDGET / Math.max(1, numCategories));
+        ScoringMode mode = this.scoringMode;
+        double[] logTable = this.logTable;
+        int[][] documentRows = new int[to - from][];
+        double[] logSums = new double[numCategories];
+        int[] counts = new int[numCategories];
+        int start = from;
+        while (start < to) {
+            /*
+             * Row 0 of the table is the likelihood of a feature never seen,
+             * shared by unknown features and features whose counts were all
+             * forgotten; every other feature of the chunk gets its own row.
+             * The row map starts at the size of the first document and grows
+             * with the distinct features actually met, so a small batch does
+             * not pay for a table sized to the budget.
+             */
+            int expectedRows = Math.min(rowBudget, documents.get(start).size() + 1);
+            IntIntHashMap rows = new IntIntHashMap(expectedRows);
+            int[] rowFeatureIds = new int[Math.max(16, expectedRows)];
+            int numRows = 1;
+            int end = start;
+            while (end < to && (end == start || numRows < rowBudget)) {
+                Collection<F> document = documents.get(end);
+                int[] docRows = new int[document.size()];
+                int i = 0;
+                for (F feature : document) {
+                    int featureId = this.featureId(feature);
+                    int row = 0;
+                    if (this.totalFeatureCount(featureId) > 0) {
+                        row = rows.get(featureId);
+                        if (row == 0) {
+                            row = numRows++;
+                            rows.add(featureId, row);
+                            if (row >= rowFeatureIds.length) {
+                                rowFeatureIds = Arrays.copyOf(rowFeatureIds, row << 1);
+                            }
+                            rowFeatureIds[row] = featureId;
+                        }
+                    }
+                    docRows[i++] = row;
+                }
+                documentRows[end - from] = docRows;
+                end++;
+            }
+
+            double[] table = new double[numRows * numCategories];
+            System.arraycopy(cache.unseenLogLikelihoods, 0, table, 0, numCategories);
+            for (int row = 1; row < numRows; row++) {
+                this.featureCounts(rowFeatureIds[row], counts);
+                BayesClassifier.logLikelihoods(counts, numCategories, cache, mode, logTable,
+                        table, row * numCategories);
+            }
+
+            for (int d = start; d < end; d++) {
+                result[d] = this.bestCategory(documentRows[d - from], table,
+                        numCategories, cache, logSums);
+                documentRows[d - from] = null;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Finds the best category of one document of a batch, accumulating its
+     * rows of the likelihood table one block of categories at a time.
+     *
+     * @param docRows The table row of each feature of the document.
+     * @param table The likelihood table of the chunk.
+     * @param numCategories The number of categories, the table's row length.
+     * @param cache The per-category values to score with.
+     * @param logSums Scratch space for the log sums.
+     * @return The best category id, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    private int bestCategory(int[] docRows, double[] table, int numCategories,
+                             CategoryCache cache, double[] logSums) {
+        CategoryScorer scorer = this.categoryScorer;
+        int best = FeatureDictionary.UNKNOWN;
+        double bestProbability = 0;
+        for (int blockStart = 0; blockStart < numCategories;
+                blockStart += BayesClassifier.CATEGORY_BLOCK) {
+            int blockEnd = Math.min(numCategories, blockStart + BayesClassifier.CATEGORY_BLOCK);
+            for (int categoryId = blockStart; categoryId < blockEnd; categoryId++) {
+                logSums[categoryId] = 1.0f;
+            }
+            for (int row : docRows) {
+                scorer.accumulate(logSums, table, row * numCategories, blockStart, blockEnd);
+            }
+            for (int categoryId = blockStart; categoryId < blockEnd; categoryId++) {
+                logSums[categoryId] = (this.categoryCount(categoryId) > 0)
+                        ? BayesClassifier.categoryProbability(logSums[categoryId], categoryId, cache)
+                        : Double.NEGATIVE_INFINITY;
+            }
+            int blockBest = scorer.argmax(logSums, blockStart, blockEnd);
+            if (this.categoryCount(blockBest) > 0
+                    && (best == FeatureDictionary.UNKNOWN || logSums[blockBest] > bestProbability)) {
+                best = blockBest;
+                bestProbability = logSums[blockBest];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Classifies the given set of features and returns the k most likely
+     * categories, best first.  Only the current best k are kept while
+     * scoring, in a bounded min-heap of primitive scores, so categories that
+     * drop out never get a Classification object and the selection costs
+     * O(C log k).  Equal scores are ordered by category id, lowest first.
+     *
+     * @param features The features to classify.
+     * @param k The number of categories to return.
+     * @return The min(k, number of categories) best classifications.
+     */
+    public List<Classification<F, C>> classifyTopK(Collection<F> features, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        int[] featureIds = this.featureIds(features);
+        int numCategories = this.getCategoryDictionary().size();
+        CategoryCache cache = this.categoryCache();
+        ClassificationHolder scratch = new ClassificationHolder();
+        this.featuresProbabilityLogSums(features, featureIds, null, featureIds.length,
+                numCategories, cache, scratch);
+
+        int capacity = Math.min(k, numCategories);
+        int[] heapIds = new int[capacity];
+        double[] heapScores = new double[capacity];
+        int size = 0;
+        for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+            if (this.categoryCount(categoryId) == 0) {
+                continue;
+            }
+            double score = BayesClassifier.categoryProbability(
+                    scratch.logSums[categoryId], categoryId, cache);
+            if (size < capacity) {
+                heapIds[size] = categoryId;
+                heapScores[size] = score;
+                BayesClassifier.siftUp(heapIds, heapScores, size++);
+            } else if (capacity > 0
+                    && BayesClassifier.isWorse(heapScores[0], heapIds[0], score, categoryId)) {
+                heapIds[0] = categoryId;
+                heapScores[0] = score;
+                BayesClassifier.siftDown(heapIds, heapScores, size);
+            }
+        }
+
+        List<Classification<F, C>> ranked = new ArrayList<Classification<F, C>>(
+                Collections.<Classification<F, C>>nCopies(size, null));
+        FeatureDictionary<C> categories = this.getCategoryDictionary();
+        for (int i = size - 1; i >= 0; i--) {
+            ranked.set(i, new Classification<F, C>(
+                    features, categories.feature(heapIds[0]), heapScores[0]));
+            heapIds[0] = heapIds[i];
+            heapScores[0] = heapScores[i];
+            BayesClassifier.siftDown(heapIds, heapScores, i);
+        }
+        return ranked;
+    }
+
+    /**
+     * Decides whether the first of two scored categories ranks below the
+     * second: it has a lower score, or the same score and a higher id.
+     *
+     * @param score The score of the first category.
+     * @param id The id of the first category.
+     * @param otherScore The score of the second category.
+     * @param otherId The id of the second category.
+     * @return Whether the first category ranks below the second.
+     */
+    private static boolean isWorse(double score, int id, double otherScore, int otherId) {
+        int toReturn = Double.compare(score, otherScore);
+        return (toReturn == 0) ? id > otherId : toReturn < 0;
+    }
+
+    /**
+     * Restores the min-heap order upwards from the given position.
+     *
+     * @param ids The category ids of the heap.
+     * @param scores The scores of the heap.
+     * @param position The position of the entry to move up.
+     */
+    private static void siftUp(int[] ids, double[] scores, int position) {
+        int id = ids[position];
+        double score = scores[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!BayesClassifier.isWorse(score, id, scores[parent], ids[parent])) {
+                break;
+            }
+            ids[position] = ids[parent];
+            scores[position] = scores[parent];
+            position = parent;
+        }
+        ids[position] = id;
+        scores[position] = score;
+    }
+
+    /**
+     * Restores the min-heap order downwards from the root.
+     *
+     * @param ids The category ids of the heap.
+     * @param scores The scores of the heap.
+     * @param size The number of entries in the heap.
+     */
+    private static void siftDown(int[] ids, double[] scores, int size) {
+        if (size == 0) {
+            return;
+        }
+        int id = ids[0];
+        double score = scores[0];
+        int position = 0;
+        while (true) {
+            int child = (position << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                    && BayesClassifier.isWorse(scores[child + 1], ids[child + 1],
+                            scores[child], ids[child])) {
+                child++;
+            }
+            if (!BayesClassifier.isWorse(scores[child], ids[child], score, id)) {
+                break;
+            }
+            ids[position] = ids[child];
+            scores[position] = scores[child];
+            position = child;
+        }
+        ids[position] = id;
+        scores[position] = score;
+    }
+
     /**
      * Classifies the given set of features. and return the full details of the
-     * classification.
+     * classification.  The result is a lazy view: classifications are only
+     * created, and sorted from least to most likely, when it is iterated.
      *
      * @return The set of categories the set of features is classified as.
      */
-    public Collection<Classification<F, C>> classifyDetailed(Collection<F> features) {
-        return this.categoryProbabilities(features);
+    public ClassificationResult<F, C> classifyDetailed(Collection<F> features) {
+        return this.categoryProbabilities(features, this.featureIds(features));
+    }
+
+    /**
+     * The log priors, smoothing denominators and unseen feature log
+     * likelihoods of all categories as of one model version.
+     */
+    private static final class CategoryCache {
+
+        /**
+         * The model version the values were computed at.
+         */
+        final long version;
+
+        /**
+         * The vocabulary size the denominators were computed with.
+         */
+        final int vocabularySize;
+
+        /**
+         * The log of the categories total.
+         */
+        final double logCategoriesTotal;
+
+        /**
+         * The log of each category's count, indexed by category id.
+         */
+        final double[] logCategoryCounts;
+
+        /**
+         * The smoothing denominator of each category, indexed by category id.
+         */
+        final double[] denominators;
+
+        /**
+         * The log of each category's denominator, indexed by category id.
+         */
+        final double[] logDenominators;
+
+        /**
+         * The log likelihood of a feature not seen in a category, indexed by
+         * category id.
+         */
+        final double[] unseenLogLikelihoods;
+
+        /**
+         * The smallest denominator of a category with a positive count,
+         * computed along with {@link #categoriesByPrior}.
+         */
+        double minDenominator;
+
+        /**
+         * The ids of the categories with a positive count by decreasing
+         * prior, computed on first use by pruned classification.
+         */
+        volatile int[] categoriesByPrior;
+
+        CategoryCache(long version, int vocabularySize, double logCategoriesTotal,
+                      double[] logCategoryCounts, double[] denominators,
+                      double[] logDenominators, double[] unseenLogLikelihoods) {
+            this.version = version;
+            this.vocabularySize = vocabularySize;
+            this.logCategoriesTotal = logCategoriesTotal;
+            this.logCategoryCounts = logCategoryCounts;
+            this.denominators = denominators;
+            this.logDenominators = logDenominators;
+            this.unseenLogLikelihoods = unseenLogLikelihoods;
+        }
     }
 
 }
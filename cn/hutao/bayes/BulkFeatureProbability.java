@@ -0,0 +1,24 @@
+package cn.hutao.bayes;
+
+/**
+ * Companion of {@link FeatureProbability} calculating the log probability of
+ * one feature in every category with a single call, so that a custom
+ * calculator costs one call per feature rather than one per feature and
+ * category.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public interface BulkFeatureProbability<F, C> {
+
+    /**
+     * Calculates log P(feature|category) for every category.
+     *
+     * @param feature The feature.
+     * @param logProbabilities Receives the log probability of the category
+     *    with id i, as assigned by the classifier's category dictionary, at
+     *    index i, for every index of the array.
+     */
+    public void featureLogProbabilities(F feature, double[] logProbabilities);
+
+}
@@ -0,0 +1,34 @@
+package cn.hutao.bayes;
+
+/**
+ * The inner loops of scoring across categories: adding a row of per-category
+ * log likelihoods into the score accumulator and picking the best category.
+ * Implementations must give bit-identical results, so a classifier scores the
+ * same whichever one it uses.
+ */
+public interface CategoryScorer {
+
+    /**
+     * Adds a row of values into the scores: {@code scores[c] += row[rowOffset
+     * + c]} for every c from {@code from} up to but excluding {@code to}.
+     *
+     * @param scores The score accumulator.
+     * @param row The array holding the row.
+     * @param rowOffset The index of the value of category 0 in the row array.
+     * @param from The first category to add.
+     * @param to The category after the last one to add.
+     */
+    public void accumulate(double[] scores, double[] row, int rowOffset, int from, int to);
+
+    /**
+     * Finds the highest score, the lowest index among equal scores.  The
+     * scores must not be NaN.
+     *
+     * @param scores The scores.
+     * @param from The first index to consider.
+     * @param to The index after the last one to consider.
+     * @return The index of the highest score, or -1 if the range is empty.
+     */
+    public int argmax(double[] scores, int from, int to);
+
+}
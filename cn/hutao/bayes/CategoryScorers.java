@@ -0,0 +1,82 @@
+package cn.hutao.bayes;
+
+/**
+ * Provides the available {@link CategoryScorer} implementations: a plain
+ * scalar one, and a SIMD one built on the incubating Vector API when the
+ * {@code jdk.incubator.vector} module is present at runtime.
+ */
+public final class CategoryScorers {
+
+    /**
+     * The class name of the Vector API scorer, loaded reflectively so that
+     * this package does not depend on the incubator module.
+     */
+    private static final String VECTOR_SCORER = "cn.hutao.bayes.vector.VectorCategoryScorer";
+
+    /**
+     * The scalar scorer.
+     */
+    private static final CategoryScorer SCALAR = new CategoryScorer() {
+
+        @Override
+        public void accumulate(double[] scores, double[] row, int rowOffset, int from, int to) {
+            for (int c = from; c < to; c++) {
+                scores[c] += row[rowOffset + c];
+            }
+        }
+
+        @Override
+        public int argmax(double[] scores, int from, int to) {
+            int best = -1;
+            double bestScore = 0;
+            for (int c = from; c < to; c++) {
+                if (best < 0 || scores[c] > bestScore) {
+                    best = c;
+                    bestScore = scores[c];
+                }
+            }
+            return best;
+        }
+    };
+
+    private CategoryScorers() {
+    }
+
+    /**
+     * Retrieves the scalar scorer.
+     *
+     * @return The scalar scorer.
+     */
+    public static CategoryScorer scalar() {
+        return CategoryScorers.SCALAR;
+    }
+
+    /**
+     * Retrieves the Vector API scorer if it can be loaded, the scalar scorer
+     * otherwise.  The JVM must be started with
+     * {@code --add-modules jdk.incubator.vector} for the former.
+     *
+     * @return The fastest scorer available.
+     */
+    public static CategoryScorer fastest() {
+        CategoryScorer vector = CategoryScorers.vector();
+        return (vector == null) ? CategoryScorers.SCALAR : vector;
+    }
+
+    /**
+     * Retrieves the Vector API scorer.
+     *
+     * @return The scorer, or null if the Vector API is not available.
+     */
+    public static CategoryScorer vector() {
+        try {
+            return (CategoryScorer) Class.forName(CategoryScorers.VECTOR_SCORER)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+package cn.hutao.bayes;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of classification results in front of a
+ * {@link BayesClassifier}, for workloads that classify the same feature sets
+ * over and over.  Results are keyed by a 128-bit fingerprint of the feature
+ * set that ignores the order of the features but not their multiplicity, and
+ * the least recently used entries are evicted first.  All entries are
+ * dropped as soon as the classifier's model version changes, so a cached
+ * result is never older than the model.
+ * <p>
+ * A hit returns the result computed for the first feature set with that
+ * fingerprint.  The category is the same for any order of the features; the
+ * score may differ from a fresh classification in the last bits, since log
+ * probabilities are summed in the order of the first set.  Feature
+ * fingerprints hash the characters of {@link CharSequence} features and the
+ * hash code of any other feature, so for the latter they are only as good as
+ * {@link Object#hashCode()}.
+ * <p>
+ * The cache is thread-safe; classifying on a miss happens outside its lock.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class ClassificationCache<F, C> {
+
+    /**
+     * The seed of the first half of a fingerprint.
+     */
+    private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The seed of the second half of a fingerprint.
+     */
+    private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * The classifier results are computed by.
+     */
+    private final BayesClassifier<F, C> classifier;
+
+    /**
+     * The maximum number of entries of each map.
+     */
+    private final int maximumSize;
+
+    /**
+     * The cached results of classify, in access order.
+     */
+    private final Map<Fingerprint, Classification<F, C>> classifications;
+
+    /**
+     * The cached results of classifyDetailed, in access order.
+     */
+    private final Map<Fingerprint, ClassificationResult<F, C>> detailed;
+
+    /**
+     * The model version the cached results were computed at.
+     */
+    private long version;
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups that had to classify.
+     */
+    private long misses;
+
+    /**
+     * The number of entries evicted to make room.
+     */
+    private long evictions;
+
+    /**
+     * Constructs a new, empty cache.
+     *
+     * @param classifier The classifier to cache the results of.
+     * @param maximumSize The maximum number of cached results of each of
+     *    classify and classifyDetailed.
+     */
+    public ClassificationCache(BayesClassifier<F, C> classifier, int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.classifier = classifier;
+        this.maximumSize = maximumSize;
+        this.classifications = this.newMap();
+        this.detailed = this.newMap();
+        this.version = classifier.getModelVersion();
+    }
+
+    /**
+     * Classifies the given set of features, answering from the cache if it
+     * was classified before at the current model version.
+     *
+     * @param features The features to classify.
+     * @return The category most likely, or null if no category is known.
+     */
+    public Classification<F, C> classify(Collection<F> features) {
+        Fingerprint key = ClassificationCache.fingerprint(features);
+        long current = this.classifier.getModelVersion();
+        Classification<F, C> cached;
+        synchronized (this) {
+            this.validate(current);
+            cached = this.classifications.get(key);
+            if (cached != null) {
+                this.hits++;
+                return new Classification<F, C>(features,
+                        cached.getCategory(), cached.getProbability());
+            }
+            this.misses++;
+        }
+        Classification<F, C> result = this.classifier.classify(features);
+        if (result != null) {
+            synchronized (this) {
+                if (this.version == current) {
+                    this.classifications.put(key, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Classifies the given set of features with full details, answering from
+     * the cache if it was classified before at the current model version.
+     * The returned result may be shared between callers; its
+     * classifications carry the feature set they were first computed for.
+     *
+     * @param features The features to classify.
+     * @return The classifications of all known categories.
+     */
+    public ClassificationResult<F, C> classifyDetailed(Collection<F> features) {
+        Fingerprint key = ClassificationCache.fingerprint(features);
+        long current = this.classifier.getModelVersion();
+        synchronized (this) {
+            this.validate(current);
+            ClassificationResult<F, C> cached = this.detailed.get(key);
+            if (cached != null) {
+                this.hits++;
+                return cached;
+            }
+            this.misses++;
+        }
+        ClassificationResult<F, C> result = this.classifier.classifyDetailed(features);
+        synchronized (this) {
+            if (this.version == current) {
+                this.detailed.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops all cached results.  The counters are kept.
+     */
+    public synchronized void clear() {
+        this.classifications.clear();
+        this.detailed.clear();
+    }
+
+    /**
+     * Retrieves the number of cached results.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return this.classifications.size() + this.detailed.size();
+    }
+
+    /**
+     * Retrieves the number of lookups answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Retrieves the number of lookups that had to classify.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Retrieves the number of entries evicted because the cache was full.
+     * Entries dropped because the model changed are not counted.
+     *
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Retrieves the share of lookups answered from the cache.
+     *
+     * @return The hit rate between 0 and 1.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (lookups == 0) ? 0 : (double) this.hits / lookups;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "ClassificationCache [size=" + this.size() + ", hits=" + this.hits
+                + ", misses=" + this.misses + ", evictions=" + this.evictions + "]";
+    }
+
+    /**
+     * Drops all entries if the model changed since they were computed.  Must
+     * be called holding the lock.
+     *
+     * @param current The current model version.
+     */
+    private void validate(long current) {
+        if (this.version != current) {
+            this.classifications.clear();
+            this.detailed.clear();
+            this.version = current;
+        }
+    }
+
+    /**
+     * Creates an access-ordered map evicting its least recently used entry
+     * beyond the maximum size.
+     *
+     * @return The map.
+     */
+    private <V> Map<Fingerprint, V> newMap() {
+        return new LinkedHashMap<Fingerprint, V>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, V> eldest) {
+                if (this.size() > ClassificationCache.this.maximumSize) {
+                    ClassificationCache.this.evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Computes the order-insensitive fingerprint of a feature set: the sums
+     * of two independent 64-bit hashes of its features.
+     *
+     * @param features The features.
+     * @return The fingerprint.
+     */
+    private static Fingerprint fingerprint(Collection<?> features) {
+        long high = features.size();
+        long low = 0;
+        for (Object feature : features) {
+            high += ClassificationCache.hash(feature, ClassificationCache.SEED_HIGH);
+            low += ClassificationCache.hash(feature, ClassificationCache.SEED_LOW);
+        }
+        return new Fingerprint(high, low);
+    }
+
+    /**
+     * Hashes a feature to 64 bits.
+     *
+     * @param feature The feature, may be null.
+     * @param seed The hash seed.
+     * @return The hash.
+     */
+    private static long hash(Object feature, long seed) {
+        long h;
+        if (feature instanceof CharSequence) {
+            CharSequence chars = (CharSequence) feature;
+            h = seed ^ chars.length();
+            for (int i = 0; i < chars.length(); i++) {
+                h = (h ^ chars.charAt(i)) * 0x100000001B3L;
+            }
+        } else {
+            h = seed ^ ((feature == null) ? 0 : feature.hashCode());
+        }
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * A 128-bit feature set fingerprint.
+     */
+    private static final class Fingerprint {
+
+        private final long high;
+
+        private final long low;
+
+        Fingerprint(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.low ^ (this.low >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) obj;
+            return this.high == other.high && this.low == other.low;
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package cn.hutao.bayes;
+
+/**
+ * A reusable, mutable receiver for the result of
+ * {@link BayesClassifier#classify(int[], ClassificationHolder)}.  Besides the
+ * winning category id and its log score it owns the scratch arrays the
+ * classifier scores with, so once they have grown to the number of
+ * categories, classifying into the same holder allocates nothing.  A holder
+ * must not be shared between threads.
+ */
+public class ClassificationHolder {
+
+    /**
+     * The id of the winning category, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    private int categoryId = FeatureDictionary.UNKNOWN;
+
+    /**
+     * The log score of the winning category.
+     */
+    private double probability;
+
+    /**
+     * Scratch space for the feature log sums of each category.
+     */
+    double[] logSums = new double[0];
+
+    /**
+     * Scratch space for the log probabilities of one feature in each
+     * category.
+     */
+    double[] row = new double[0];
+
+    /**
+     * Scratch space for the counts of one feature in each category.
+     */
+    int[] counts = new int[0];
+
+    /**
+     * Scratch space for resolved feature ids.
+     */
+    int[] featureIds = new int[0];
+
+    /**
+     * Scratch space for the term frequencies of the features, or their
+     * total counts during pruned classification.
+     */
+    int[] frequencies = new int[0];
+
+    /**
+     * Scratch space for the upper bounds of pruned classification, one per
+     * feature.
+     */
+    double[] bounds = new double[0];
+
+    /**
+     * Checks whether the last classification found a category.
+     *
+     * @return Whether a category was found.
+     */
+    public boolean hasResult() {
+        return this.categoryId != FeatureDictionary.UNKNOWN;
+    }
+
+    /**
+     * Retrieves the id of the winning category, to be resolved through the
+     * classifier's category dictionary.
+     *
+     * @return The category id, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    public int getCategoryId() {
+        return this.categoryId;
+    }
+
+    /**
+     * Retrieves the log score of the winning category, the same value
+     * {@link Classification#getProbability()} reports.
+     *
+     * @return The log score.
+     */
+    public double getProbability() {
+        return this.probability;
+    }
+
+    /**
+     * Stores a result.
+     *
+     * @param categoryId The id of the winning category.
+     * @param probability Its log score.
+     */
+    void set(int categoryId, double probability) {
+        this.categoryId = categoryId;
+        this.probability = probability;
+    }
+
+    /**
+     * Grows the scratch arrays to hold the given number of categories.
+     *
+     * @param numCategories The number of categories.
+     */
+    void ensureCategories(int numCategories) {
+        if (this.logSums.length < numCategories) {
+            this.logSums = new double[numCategories];
+            this.row = new double[numCategories];
+            this.counts = new int[numCategories];
+        }
+    }
+
+    /**
+     * Grows the per-feature scratch arrays to hold the given number of ids.
+     *
+     * @param numFeatures The number of features.
+     */
+    void ensureFeatures(int numFeatures) {
+        if (this.featureIds.length < numFeatures) {
+            this.featureIds = new int[Math.max(numFeatures, this.featureIds.length << 1)];
+            this.frequencies = new int[this.featureIds.length];
+            this.bounds = new double[this.featureIds.length];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ClassificationHolder [categoryId=" + this.categoryId
+                + ", probability=" + this.probability + "]";
+    }
+
+}
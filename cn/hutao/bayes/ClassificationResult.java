@@ -0,0 +1,242 @@
+package cn.hutao.bayes;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The detailed result of classifying a set of features, as returned by
+ * {@link BayesClassifier#classifyDetailed(Collection)}.  It holds only the
+ * log score of every known category; sorting them and creating
+ * {@link Classification} objects is deferred until the result is iterated,
+ * and the normalized posteriors are computed on first request.  Peeking at
+ * the best category with {@link #best()} is a single scan over the scores.
+ * <p>
+ * Iteration goes from the least to the most likely category, the best one
+ * last.  Categories with equal scores are ordered by category id, highest
+ * first, so that the last one is the category
+ * {@link BayesClassifier#classify(Collection)} picks.  The result is
+ * read-only and may be shared between threads.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class ClassificationResult<F, C> extends AbstractCollection<Classification<F, C>> {
+
+    /**
+     * The classified features.
+     */
+    private final Collection<F> features;
+
+    /**
+     * The categories, in category id order.
+     */
+    private final Object[] categories;
+
+    /**
+     * The category ids of the categories.
+     */
+    private final int[] categoryIds;
+
+    /**
+     * The log score of each category.
+     */
+    private final double[] scores;
+
+    /**
+     * The indexes of the categories from least to most likely, computed on
+     * first iteration.
+     */
+    private volatile int[] order;
+
+    /**
+     * The normalized posterior of each category, computed on first request.
+     */
+    private volatile double[] posteriors;
+
+    /**
+     * Constructs a new result.  The arrays are taken over, not copied.
+     *
+     * @param features The classified features.
+     * @param categories The categories, in category id order.
+     * @param categoryIds The category ids of the categories.
+     * @param scores The log score of each category.
+     */
+    ClassificationResult(Collection<F> features, Object[] categories,
+                         int[] categoryIds, double[] scores) {
+        this.features = features;
+        this.categories = categories;
+        this.categoryIds = categoryIds;
+        this.scores = scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.scores.length;
+    }
+
+    /**
+     * Retrieves the most likely category without sorting.
+     *
+     * @return The best classification, or null if no category is known.
+     */
+    public Classification<F, C> best() {
+        int best = -1;
+        for (int i = 0; i < this.scores.length; i++) {
+            if (best < 0 || this.scores[i] > this.scores[best]) {
+                best = i;
+            }
+        }
+        return (best < 0) ? null : this.classification(best);
+    }
+
+    /**
+     * Retrieves the log score of a category, the probability its
+     * {@link Classification} reports.
+     *
+     * @param category The category.
+     * @return The log score, or negative infinity for an unknown category.
+     */
+    public double getScore(C category) {
+        int index = this.indexOf(category);
+        return (index < 0) ? Double.NEGATIVE_INFINITY : this.scores[index];
+    }
+
+    /**
+     * Retrieves the posterior probability of a category, normalized so that
+     * the posteriors of all categories sum up to one.
+     *
+     * @param category The category.
+     * @return The posterior between 0 and 1, zero for an unknown category.
+     */
+    public double getPosterior(C category) {
+        int index = this.indexOf(category);
+        return (index < 0) ? 0 : this.posteriors()[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Classification<F, C>> iterator() {
+        final int[] sorted = this.order();
+        return new Iterator<Classification<F, C>>() {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < sorted.length;
+            }
+
+            @Override
+            public Classification<F, C> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return ClassificationResult.this.classification(sorted[this.next++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Creates the classification of one category.
+     *
+     * @param index The index of the category.
+     * @return The classification.
+     */
+    @SuppressWarnings("unchecked")
+    private Classification<F, C> classification(int index) {
+        return new Classification<F, C>(this.features,
+                (C) this.categories[index], this.scores[index]);
+    }
+
+    /**
+     * Finds a category.
+     *
+     * @param category The category.
+     * @return Its index, or -1.
+     */
+    private int indexOf(C category) {
+        for (int i = 0; i < this.categories.length; i++) {
+            if (this.categories[i].equals(category)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the category indexes from least to most likely, sorting them
+     * on first use.
+     *
+     * @return The sorted indexes.
+     */
+    private int[] order() {
+        int[] sorted = this.order;
+        if (sorted == null) {
+            Integer[] indexes = new Integer[this.scores.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            Arrays.sort(indexes, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int toReturn = Double.compare(ClassificationResult.this.scores[o1],
+                            ClassificationResult.this.scores[o2]);
+                    return (toReturn == 0)
+                            ? Integer.compare(ClassificationResult.this.categoryIds[o2],
+                                    ClassificationResult.this.categoryIds[o1])
+                            : toReturn;
+                }
+            });
+            sorted = new int[indexes.length];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = indexes[i];
+            }
+            this.order = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Retrieves the normalized posteriors, computing them on first use.  The
+     * log scores are shifted by their maximum before exponentiating, so that
+     * no posterior underflows to zero for the best categories.
+     *
+     * @return The posteriors, by category index.
+     */
+    private double[] posteriors() {
+        double[] normalized = this.posteriors;
+        if (normalized == null) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (double score : this.scores) {
+                max = Math.max(max, score);
+            }
+            normalized = new double[this.scores.length];
+            double sum = 0;
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] = Math.exp(this.scores[i] - max);
+                sum += normalized[i];
+            }
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] /= sum;
+            }
+            this.posteriors = normalized;
+        }
+        return normalized;
+    }
+
+}
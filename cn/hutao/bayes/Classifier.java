@@ -1,11 +1,11 @@
 package cn.hutao.bayes;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Dictionary;
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -20,14 +20,9 @@ import java.util.Set;
 public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
 
     /**
-     * Initial capacity of category dictionaries.
+     * The additive smoothing parameter used for feature probabilities.
      */
-    private static final int INITIAL_CATEGORY_DICTIONARY_CAPACITY = 8;
-
-    /**
-     * Initial capacity of feature dictionaries.
-     */
-    private static final int INITIAL_FEATURE_DICTIONARY_CAPACITY = 1024;
+    protected static final double DEFAULT_LAMBDA = 1;
 
     /**
      * The initial memory capacity or how many classifications are memorized.
@@ -35,48 +30,153 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
     private int memoryCapacity = 1000;
 
     /**
-     * A dictionary mapping features to their number of occurrences in each
-     * known category.
+     * The dictionary assigning dense ids to features.
      */
-    private Dictionary<C, Dictionary<F, Integer>> featureCountPerCategory;
+    private final FeatureDictionary<F> featureDictionary;
 
     /**
-     * A dictionary mapping features to their number of occurrences.
+     * The dictionary assigning dense ids to categories.
      */
-    private Dictionary<F, Integer> totalFeatureCount;
+    private final FeatureDictionary<C> categoryDictionary;
 
     /**
-     * A dictionary mapping categories to their number of occurrences.
+     * The store holding the feature and category counts by id.
      */
-    private Dictionary<C, Integer> totalCategoryCount;
+    private final CountStore counts;
 
     /**
      * The classifier's memory. It will forget old classifications as soon as
      * they become too old.
      */
-    private Queue<Classification<F, C>> memoryQueue;
+    private final ExampleMemory memory = new ExampleMemory();
+
+    /**
+     * The filter over the features with a positive total count, consulted
+     * before the feature dictionary when resolving features to classify.
+     */
+    private VocabularyFilter vocabularyFilter;
+
+    /**
+     * The model version, advanced by every change to the learned counts.
+     */
+    private long modelVersion;
+
+    /**
+     * The model version at which the counts of each category last changed,
+     * indexed by category id.
+     */
+    private long[] categoryVersions = new long[0];
+
+    /**
+     * Receives the id of every feature whose counts change, or null.
+     */
+    private FeatureChangeLog featureChangeLog;
 
     /**
      * Constructs a new classifier without any trained knowledge.
      */
     public Classifier() {
+        this(new HashCountStore());
+    }
+
+    /**
+     * Constructs a new classifier without any trained knowledge, keeping its
+     * counts in the given store.
+     *
+     * @param counts The store for the learned counts.
+     */
+    public Classifier(CountStore counts) {
+        this(counts, new FeatureDictionary<F>(), new FeatureDictionary<C>());
+    }
+
+    /**
+     * Constructs a new classifier without any trained knowledge, keeping its
+     * counts in the given store and its ids in the given dictionaries.
+     *
+     * @param counts The store for the learned counts.
+     * @param featureDictionary The dictionary assigning ids to features.
+     * @param categoryDictionary The dictionary assigning ids to categories.
+     */
+    protected Classifier(CountStore counts, FeatureDictionary<F> featureDictionary,
+                         FeatureDictionary<C> categoryDictionary) {
+        this.counts = counts;
+        this.featureDictionary = featureDictionary;
+        this.categoryDictionary = categoryDictionary;
         this.reset();
     }
 
     /**
-     * Resets the learned feature and category counts.
+     * Resets the learned feature and category counts.  Ids handed out by the
+     * feature and category dictionaries become invalid.
      */
     public void reset() {
-        this.featureCountPerCategory =
-                new Hashtable<C, Dictionary<F,Integer>>(
-                        Classifier.INITIAL_CATEGORY_DICTIONARY_CAPACITY);
-        this.totalFeatureCount =
-                new Hashtable<F, Integer>(
-                        Classifier.INITIAL_FEATURE_DICTIONARY_CAPACITY);
-        this.totalCategoryCount =
-                new Hashtable<C, Integer>(
-                        Classifier.INITIAL_CATEGORY_DICTIONARY_CAPACITY);
-        this.memoryQueue = new LinkedList<Classification<F, C>>();
+        this.counts.clear();
+        this.featureDictionary.clear();
+        this.categoryDictionary.clear();
+        this.memory.clear();
+        this.vocabularyFilter = new VocabularyFilter(AbstractCountStore.INITIAL_FEATURE_CAPACITY);
+        this.modelVersion++;
+        Arrays.fill(this.categoryVersions, this.modelVersion);
+    }
+
+    /**
+     * Retrieves the model version.  It changes whenever the learned counts
+     * change, so anything derived from the counts can be cached and checked
+     * against it.
+     *
+     * @return The model version.
+     */
+    public long getModelVersion() {
+        return this.modelVersion;
+    }
+
+    /**
+     * Retrieves the model version at which the counts of a category last
+     * changed.  A value derived from the category's counts at model version v
+     * is still valid as long as this is not greater than v, apart from
+     * values that also depend on the vocabulary size or the categories
+     * total.
+     *
+     * @param categoryId The category id.
+     * @return The version, zero for a category that never changed.
+     */
+    protected long getCategoryVersion(int categoryId) {
+        return (categoryId >= 0 && categoryId < this.categoryVersions.length)
+                ? this.categoryVersions[categoryId] : 0;
+    }
+
+    /**
+     * Advances the model version and marks every category as changed, for
+     * changes to how the counts are scored rather than to the counts, so
+     * that anything cached against the version is computed again.
+     */
+    protected void invalidate() {
+        this.modelVersion++;
+        Arrays.fill(this.categoryVersions, this.modelVersion);
+    }
+
+    /**
+     * Advances the model version after the counts of a category changed.
+     *
+     * @param categoryId The id of the changed category.
+     */
+    private void touch(int categoryId) {
+        this.modelVersion++;
+        if (categoryId >= this.categoryVersions.length) {
+            this.categoryVersions = Arrays.copyOf(this.categoryVersions,
+                    Math.max(categoryId + 1, this.categoryVersions.length << 1));
+        }
+        this.categoryVersions[categoryId] = this.modelVersion;
+    }
+
+    /**
+     * Sets the log that receives the id of every feature whose counts
+     * change from now on.
+     *
+     * @param featureChangeLog The log, or null to stop logging.
+     */
+    void setFeatureChangeLog(FeatureChangeLog featureChangeLog) {
+        this.featureChangeLog = featureChangeLog;
     }
 
     /**
@@ -85,7 +185,18 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The Set of features the classifier knows about.
      */
     public Set<F> getFeatures() {
-        return ((Hashtable<F, Integer>) this.totalFeatureCount).keySet();
+        return new AbstractSet<F>() {
+
+            @Override
+            public Iterator<F> iterator() {
+                return Classifier.this.knownIterator(Classifier.this.featureDictionary, true);
+            }
+
+            @Override
+            public int size() {
+                return Classifier.this.counts.distinctFeatureCount();
+            }
+        };
     }
 
     /**
@@ -94,7 +205,162 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The Set of categories the classifier knows about.
      */
     public Set<C> getCategories() {
-        return ((Hashtable<C, Integer>) this.totalCategoryCount).keySet();
+        return new AbstractSet<C>() {
+
+            @Override
+            public Iterator<C> iterator() {
+                return Classifier.this.knownIterator(Classifier.this.categoryDictionary, false);
+            }
+
+            @Override
+            public int size() {
+                int toReturn = 0;
+                for (int i = 0; i < Classifier.this.categoryDictionary.size(); i++) {
+                    if (Classifier.this.counts.categoryCount(i) > 0) {
+                        toReturn++;
+                    }
+                }
+                return toReturn;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries of a dictionary that currently have a
+     * positive count.
+     *
+     * @param dictionary The feature or category dictionary.
+     * @param features Whether the dictionary holds features or categories.
+     * @return The iterator.
+     */
+    private <T> Iterator<T> knownIterator(final FeatureDictionary<T> dictionary,
+                                          final boolean features) {
+        return new Iterator<T>() {
+
+            private int next = this.advance(0);
+
+            private int advance(int from) {
+                while (from < dictionary.size() && !this.isKnown(from)) {
+                    from++;
+                }
+                return from;
+            }
+
+            private boolean isKnown(int id) {
+                return features
+                        ? Classifier.this.counts.totalFeatureCount(id) > 0
+                        : Classifier.this.counts.categoryCount(id) > 0;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next < dictionary.size();
+            }
+
+            @Override
+            public T next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T toReturn = dictionary.feature(this.next);
+                this.next = this.advance(this.next + 1);
+                return toReturn;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Retrieves the dictionary assigning ids to features.  Pipelines that
+     * tokenize once can resolve their features here and use the id-based
+     * overloads of learn and classify.
+     *
+     * @return The feature dictionary.
+     */
+    public FeatureDictionary<F> getFeatureDictionary() {
+        return this.featureDictionary;
+    }
+
+    /**
+     * Retrieves the filter over the known vocabulary and its lookup
+     * counters.  Classifiers resolving features without the dictionary, such
+     * as {@link HashedBayesClassifier}, do not consult it.
+     *
+     * @return The vocabulary filter.
+     */
+    public VocabularyFilter getVocabularyFilter() {
+        return this.vocabularyFilter;
+    }
+
+    /**
+     * Resolves a feature to its id without interning it.  Features the
+     * vocabulary filter rules out are reported as unknown without probing
+     * the dictionary, as are features whose counts were all forgotten.
+     *
+     * @param feature The feature.
+     * @return The id, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    protected int featureId(F feature) {
+        if (feature == null || !this.vocabularyFilter.mightContain(feature)) {
+            return FeatureDictionary.UNKNOWN;
+        }
+        int featureId = this.featureDictionary.id(feature);
+        if (featureId == FeatureDictionary.UNKNOWN
+                || this.counts.totalFeatureCount(featureId) == 0) {
+            this.vocabularyFilter.falsePositive();
+            return FeatureDictionary.UNKNOWN;
+        }
+        return featureId;
+    }
+
+    /**
+     * Resolves a feature to its id, assigning a new id to unknown features.
+     *
+     * @param feature The feature.
+     * @return The id.
+     */
+    protected int internFeature(F feature) {
+        return this.featureDictionary.intern(feature);
+    }
+
+    /**
+     * Resolves features to their ids without interning them, for use with the
+     * id-based overloads of classify.
+     *
+     * @param features The features.
+     * @return The ids in iteration order, {@link FeatureDictionary#UNKNOWN}
+     *    for unknown features.
+     */
+    public int[] featureIds(Collection<? extends F> features) {
+        int[] toReturn = new int[features.size()];
+        int i = 0;
+        for (F feature : features) {
+            toReturn[i++] = this.featureId(feature);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Retrieves an independent copy of the feature dictionary for a frozen
+     * model.  The copy is never modified, so it can be read concurrently.
+     *
+     * @return The dictionary copy.
+     */
+    protected FeatureDictionary<F> copyFeatureDictionary() {
+        return new FeatureDictionary<F>(this.featureDictionary);
+    }
+
+    /**
+     * Retrieves the dictionary assigning ids to categories.
+     *
+     * @return The category dictionary.
+     */
+    public FeatureDictionary<C> getCategoryDictionary() {
+        return this.categoryDictionary;
     }
 
     /**
@@ -113,8 +379,8 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @param memoryCapacity The new memory capacity.
      */
     public void setMemoryCapacity(int memoryCapacity) {
-        for (int i = this.memoryCapacity; i > memoryCapacity; i--) {
-            this.memoryQueue.poll();
+        for (int i = this.memoryCapacity; i > memoryCapacity && this.memory.size() > 0; i--) {
+            this.memory.removeOldest();
         }
         this.memoryCapacity = memoryCapacity;
     }
@@ -128,26 +394,24 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @param category The category the feature occurred in.
      */
     public void incrementFeature(F feature, C category) {
-        Dictionary<F, Integer> features = this.featureCountPerCategory.get(category);
-        if (features == null) {
-            this.featureCountPerCategory.put(category,
-                    new Hashtable<F, Integer>(
-                            Classifier.INITIAL_FEATURE_DICTIONARY_CAPACITY));
-            features = this.featureCountPerCategory.get(category);
-        }
-        Integer count = features.get(feature);
-        if (count == null) {
-            features.put(feature, 0);
-            count = features.get(feature);
-        }
-        features.put(feature, ++count);
+        int categoryId = this.categoryDictionary.intern(category);
+        this.addFeatureCount(this.internFeature(feature), categoryId, 1);
+        this.touch(categoryId);
+    }
 
-        Integer totalCount = this.totalFeatureCount.get(feature);
-        if (totalCount == null) {
-            this.totalFeatureCount.put(feature, 0);
-            totalCount = this.totalFeatureCount.get(feature);
-        }
-        this.totalFeatureCount.put(feature, ++totalCount);
+    /**
+     * Adds n occurrences of a given feature in the given category in one
+     * update.
+     *
+     * @param feature The feature, which count to increase.
+     * @param category The category the feature occurred in.
+     * @param n The number of occurrences, positive.
+     */
+    public void incrementFeature(F feature, C category, int n) {
+        Classifier.checkCount(n);
+        int categoryId = this.categoryDictionary.intern(category);
+        this.addFeatureCount(this.internFeature(feature), categoryId, n);
+        this.touch(categoryId);
     }
 
     /**
@@ -157,12 +421,22 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @param category The category, which count to increase.
      */
     public void incrementCategory(C category) {
-        Integer count = this.totalCategoryCount.get(category);
-        if (count == null) {
-            this.totalCategoryCount.put(category, 0);
-            count = this.totalCategoryCount.get(category);
-        }
-       this.totalCategoryCount.put(category, ++count);
+        int categoryId = this.categoryDictionary.intern(category);
+        this.counts.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * Adds n occurrences of a given category in one update.
+     *
+     * @param category The category, which count to increase.
+     * @param n The number of occurrences, positive.
+     */
+    public void incrementCategory(C category, int n) {
+        Classifier.checkCount(n);
+        int categoryId = this.categoryDictionary.intern(category);
+        this.counts.incrementCategory(categoryId, n);
+        this.touch(categoryId);
     }
 
     /**
@@ -174,32 +448,12 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @param category The category.
      */
     public void decrementFeature(F feature, C category) {
-        Dictionary<F, Integer> features =
-                this.featureCountPerCategory.get(category);
-        if (features == null) {
-            return;
-        }
-        Integer count = features.get(feature);
-        if (count == null) {
-            return;
-        }
-        if (count.intValue() == 1) {
-            features.remove(feature);
-            if (features.size() == 0) {
-                this.featureCountPerCategory.remove(category);
-            }
-        } else {
-            features.put(feature, --count);
-        }
-
-        Integer totalCount = this.totalFeatureCount.get(feature);
-        if (totalCount == null) {
-            return;
-        }
-        if (totalCount.intValue() == 1) {
-            this.totalFeatureCount.remove(feature);
-        } else {
-            this.totalFeatureCount.put(feature, --totalCount);
+        int featureId = this.featureId(feature);
+        int categoryId = this.categoryDictionary.id(category);
+        if (featureId != FeatureDictionary.UNKNOWN
+                && categoryId != FeatureDictionary.UNKNOWN) {
+            this.removeFeatureCount(featureId, categoryId, 1);
+            this.touch(categoryId);
         }
     }
 
@@ -210,14 +464,10 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @param category The category, which count to increase.
      */
     public void decrementCategory(C category) {
-        Integer count = this.totalCategoryCount.get(category);
-        if (count == null) {
-            return;
-        }
-        if (count.intValue() == 1) {
-            this.totalCategoryCount.remove(category);
-        } else {
-            this.totalCategoryCount.put(category, --count);
+        int categoryId = this.categoryDictionary.id(category);
+        if (categoryId != FeatureDictionary.UNKNOWN) {
+            this.counts.decrementCategory(categoryId);
+            this.touch(categoryId);
         }
     }
 
@@ -227,12 +477,16 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The total category count.
      */
     public int getCategoriesTotal() {
-        int toReturn = 0;
-        for (Enumeration<Integer> e = this.totalCategoryCount.elements();
-             e.hasMoreElements();) {
-            toReturn += e.nextElement();
-        }
-        return toReturn;
+        return this.counts.getCategoriesTotal();
+    }
+
+    /**
+     * Retrieves the number of distinct features the classifier knows about.
+     *
+     * @return The vocabulary size.
+     */
+    public int getVocabularySize() {
+        return this.counts.distinctFeatureCount();
     }
 
     /**
@@ -244,12 +498,8 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The number of occurrences of the feature in the category.
      */
     public int featureCount(F feature, C category) {
-        Dictionary<F, Integer> features = this.featureCountPerCategory.get(category);
-        if (features == null) {
-            return 0;
-        }
-        Integer count = features.get(feature);
-        return (count == null) ? 0 : count.intValue();
+        return this.featureCount(this.featureId(feature),
+                this.categoryDictionary.id(category));
     }
 
     /**
@@ -259,17 +509,7 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The total number of features in the category.
      */
     public int categoryFeatureCount(C category) {
-        Dictionary<F, Integer> features = this.featureCountPerCategory.get(category);
-        if (features == null) {
-            return 0;
-        }
-
-        int toReturn = 0;
-        for (Enumeration<Integer> e = features.elements(); e.hasMoreElements();) {
-            toReturn += e.nextElement();
-        }
-
-        return toReturn;
+        return this.categoryFeatureCount(this.categoryDictionary.id(category));
     }
 
     /**
@@ -279,8 +519,73 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      * @return The number of occurrences.
      */
     public int categoryCount(C category) {
-        Integer count = this.totalCategoryCount.get(category);
-        return (count == null) ? 0 : count.intValue();
+        return this.categoryCount(this.categoryDictionary.id(category));
+    }
+
+    /**
+     * Retrieves the number of occurrences of the given feature in the given
+     * category by id.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @return The number of occurrences, zero for unknown ids.
+     */
+    public int featureCount(int featureId, int categoryId) {
+        if (featureId == FeatureDictionary.UNKNOWN
+                || categoryId == FeatureDictionary.UNKNOWN) {
+            return 0;
+        }
+        return this.counts.featureCount(featureId, categoryId);
+    }
+
+    /**
+     * Retrieves the number of occurrences of the given feature in every
+     * category by id.
+     *
+     * @param featureId The feature id.
+     * @param counts Receives the count of category id i at index i; all zero
+     *    for an unknown feature.
+     */
+    public void featureCounts(int featureId, int[] counts) {
+        if (featureId == FeatureDictionary.UNKNOWN) {
+            Arrays.fill(counts, 0);
+        } else {
+            this.counts.featureCounts(featureId, counts);
+        }
+    }
+
+    /**
+     * Retrieves the number of occurrences of the given feature in all
+     * categories by id.
+     *
+     * @param featureId The feature id.
+     * @return The number of occurrences, zero for an unknown id.
+     */
+    public int totalFeatureCount(int featureId) {
+        return (featureId == FeatureDictionary.UNKNOWN)
+                ? 0 : this.counts.totalFeatureCount(featureId);
+    }
+
+    /**
+     * Retrieves the total number of features in the given category by id.
+     *
+     * @param categoryId The category id.
+     * @return The total number of features, zero for an unknown id.
+     */
+    public int categoryFeatureCount(int categoryId) {
+        return (categoryId == FeatureDictionary.UNKNOWN)
+                ? 0 : this.counts.categoryFeatureCount(categoryId);
+    }
+
+    /**
+     * Retrieves the number of occurrences of the given category by id.
+     *
+     * @param categoryId The category id.
+     * @return The number of occurrences, zero for an unknown id.
+     */
+    public int categoryCount(int categoryId) {
+        return (categoryId == FeatureDictionary.UNKNOWN)
+                ? 0 : this.counts.categoryCount(categoryId);
     }
 
     /**
@@ -288,16 +593,29 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      */
     @Override
     public double featureProbability(F feature, C category) {
-        return this.featureProbability(feature, category, 1);
+        return this.featureProbability(feature, category, Classifier.DEFAULT_LAMBDA);
     }
 
     public double featureProbability(F feature, C category, double lambda) {
-        if (this.categoryCount(category) == 0) {
+        return this.featureProbability(this.featureId(feature),
+                this.categoryDictionary.id(category), lambda);
+    }
+
+    /**
+     * Retrieves the smoothed probability P(feature|category) by id.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @param lambda The additive smoothing parameter.
+     * @return The probability, zero for unknown categories.
+     */
+    public double featureProbability(int featureId, int categoryId, double lambda) {
+        if (this.categoryCount(categoryId) == 0) {
             return 0;
         }
-        int totalFeatureCount = this.totalFeatureCount.size();
-        return ((double) this.featureCount(feature, category) + lambda)
-                / ((double) this.categoryFeatureCount(category) + totalFeatureCount * lambda);
+        int totalFeatureCount = this.counts.distinctFeatureCount();
+        return ((double) this.featureCount(featureId, categoryId) + lambda)
+                / ((double) this.categoryFeatureCount(categoryId) + totalFeatureCount * lambda);
     }
 
     /**
@@ -340,6 +658,27 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
         this.learn(new Classification<F, C>(features, category));
     }
 
+    /**
+     * Train the classifier with features already resolved through the
+     * feature dictionary.
+     *
+     * @param category The category the features belong to.
+     * @param featureIds The interned ids of the features that resulted in
+     *    the given category.
+     * @throws IllegalArgumentException If an id was not assigned by the
+     *    feature dictionary; nothing is learned then.
+     */
+    public void learn(C category, int[] featureIds) {
+        this.checkFeatureIds(featureIds);
+        int categoryId = this.categoryDictionary.intern(category);
+        this.memory.beginExample(categoryId);
+        for (int featureId : featureIds) {
+            this.addFeatureCount(featureId, categoryId, 1);
+            this.memory.addFeature(featureId);
+        }
+        this.remember(categoryId);
+    }
+
     /**
      * Train the classifier.
      *
@@ -347,22 +686,279 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      */
     public void learn(Classification<F, C> classification) {
 
+        int categoryId = this.categoryDictionary.intern(classification.getCategory());
+        this.memory.beginExample(categoryId);
         for (F feature : classification.getFeatureset()) {
-            this.incrementFeature(feature, classification.getCategory());
+            int featureId = this.internFeature(feature);
+            this.addFeatureCount(featureId, categoryId, 1);
+            this.memory.addFeature(featureId);
         }
-        this.incrementCategory(classification.getCategory());
+        this.remember(categoryId);
+    }
 
-        this.memoryQueue.offer(classification);
-        if (this.memoryQueue.size() > this.memoryCapacity) {
-            Classification<F, C> toForget = this.memoryQueue.remove();
+    /**
+     * Train the classifier with term frequencies: each feature is counted as
+     * often as the map says, with one dictionary lookup and one count update
+     * per distinct feature.  Equal to learning a collection in which every
+     * feature is repeated that many times.
+     *
+     * @param category The category the features belong to.
+     * @param featureCounts The number of occurrences of each feature, all
+     *    positive.
+     */
+    public void learn(C category, Map<F, Integer> featureCounts) {
+        for (Integer count : featureCounts.values()) {
+            Classifier.checkCount(count);
+        }
+        int categoryId = this.categoryDictionary.intern(category);
+        this.memory.beginExample(categoryId);
+        for (Map.Entry<F, Integer> entry : featureCounts.entrySet()) {
+            int featureId = this.internFeature(entry.getKey());
+            int count = entry.getValue();
+            this.addFeatureCount(featureId, categoryId, count);
+            this.memory.addFeature(featureId, count);
+        }
+        this.remember(categoryId);
+    }
+
+    /**
+     * Train the classifier with term frequencies of features already
+     * resolved through the feature dictionary.
+     *
+     * @param category The category the features belong to.
+     * @param featureIds The interned ids of the features.
+     * @param featureCounts The number of occurrences of the feature with the
+     *    same index, all positive.
+     * @throws IllegalArgumentException If an id was not assigned by the
+     *    feature dictionary or a count is not positive; nothing is learned
+     *    then.
+     */
+    public void learn(C category, int[] featureIds, int[] featureCounts) {
+        if (featureIds.length != featureCounts.length) {
+            throw new IllegalArgumentException("Got " + featureIds.length + " feature ids but "
+                    + featureCounts.length + " counts");
+        }
+        this.checkFeatureIds(featureIds);
+        for (int count : featureCounts) {
+            Classifier.checkCount(count);
+        }
+        int categoryId = this.categoryDictionary.intern(category);
+        this.memory.beginExample(categoryId);
+        for (int i = 0; i < featureIds.length; i++) {
+            this.addFeatureCount(featureIds[i], categoryId, featureCounts[i]);
+            this.memory.addFeature(featureIds[i], featureCounts[i]);
+        }
+        this.remember(categoryId);
+    }
 
-            for (F feature : toForget.getFeatureset()) {
-                this.decrementFeature(feature, toForget.getCategory());
+    /**
+     * Retrieves the bound of the feature ids the classifier can count, the
+     * number of features interned by the feature dictionary.
+     *
+     * @return The exclusive upper bound of valid feature ids.
+     */
+    protected int featureIdLimit() {
+        return this.featureDictionary.size();
+    }
+
+    /**
+     * Checks that feature ids are below the {@link #featureIdLimit() limit}.
+     *
+     * @param featureIds The ids.
+     */
+    void checkFeatureIds(int[] featureIds) {
+        int limit = this.featureIdLimit();
+        for (int featureId : featureIds) {
+            if (featureId < 0 || featureId >= limit) {
+                throw new IllegalArgumentException("Unknown feature id " + featureId
+                        + ", valid ids are below " + limit);
             }
-            this.decrementCategory(toForget.getCategory());
         }
     }
 
+    /**
+     * Checks that a term frequency is positive.
+     *
+     * @param count The count.
+     */
+    static void checkCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Feature counts must be positive: " + count);
+        }
+    }
+
+    /**
+     * Counts occurrences of a feature, adding it to the vocabulary filter if
+     * it was not known before.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @param n The number of occurrences.
+     */
+    private void addFeatureCount(int featureId, int categoryId, int n) {
+        boolean unseen = this.counts.totalFeatureCount(featureId) == 0;
+        if (this.featureChangeLog != null) {
+            this.featureChangeLog.add(featureId);
+        }
+        if (n == 1) {
+            this.counts.incrementFeature(featureId, categoryId);
+        } else {
+            this.counts.incrementFeature(featureId, categoryId, n);
+        }
+        if (unseen) {
+            F feature = this.featureDictionary.feature(featureId);
+            if (feature != null) {
+                this.vocabularyFilter.add(feature);
+                if (this.vocabularyFilter.isFull()) {
+                    this.rebuildVocabularyFilter(this.vocabularyFilter.capacity() << 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets occurrences of a feature, removing it from the vocabulary
+     * filter if it is no longer known.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @param n The number of occurrences.
+     */
+    private void removeFeatureCount(int featureId, int categoryId, int n) {
+        if (this.counts.totalFeatureCount(featureId) == 0) {
+            return;
+        }
+        if (this.featureChangeLog != null) {
+            this.featureChangeLog.add(featureId);
+        }
+        if (n == 1) {
+            this.counts.decrementFeature(featureId, categoryId);
+        } else {
+            this.counts.decrementFeature(featureId, categoryId, n);
+        }
+        if (this.counts.totalFeatureCount(featureId) == 0) {
+            F feature = this.featureDictionary.feature(featureId);
+            if (feature != null) {
+                this.vocabularyFilter.remove(feature);
+            }
+        }
+    }
+
+    /**
+     * Replaces the vocabulary filter by one of the given capacity holding
+     * every known feature.
+     *
+     * @param capacity The capacity of the new filter.
+     */
+    private void rebuildVocabularyFilter(int capacity) {
+        VocabularyFilter rebuilt = new VocabularyFilter(capacity);
+        for (int featureId = 0; featureId < this.featureDictionary.size(); featureId++) {
+            if (this.counts.totalFeatureCount(featureId) > 0) {
+                rebuilt.add(this.featureDictionary.feature(featureId));
+            }
+        }
+        rebuilt.inheritCounters(this.vocabularyFilter);
+        this.vocabularyFilter = rebuilt;
+    }
+
+    /**
+     * Completes learning an example whose features were already counted and
+     * written to memory, forgetting the oldest example if the memory is
+     * full.
+     *
+     * @param categoryId The category id of the example.
+     */
+    private void remember(int categoryId) {
+        this.counts.incrementCategory(categoryId);
+        this.memory.endExample();
+        this.touch(categoryId);
+
+        if (this.memory.size() > this.memoryCapacity) {
+            int toForget = this.memory.oldestCategory();
+            for (int i = 0; i < this.memory.oldestLength(); i++) {
+                int entry = this.memory.oldestEntry(i);
+                if (entry < 0) {
+                    this.removeFeatureCount(this.memory.oldestEntry(++i), toForget, -entry);
+                } else {
+                    this.removeFeatureCount(entry, toForget, 1);
+                }
+            }
+            this.counts.decrementCategory(toForget);
+            this.memory.removeOldest();
+            this.touch(toForget);
+        }
+    }
+
+    /**
+     * Tells whether the count store keeps exact counts.
+     *
+     * @return Whether every count is exact.
+     * @see CountStore#isExact()
+     */
+    boolean hasExactCounts() {
+        return this.counts.isExact();
+    }
+
+    /**
+     * Calculates the log likelihoods of a feature with a positive total
+     * count in every category, the values classify sums up for it, for
+     * freezing a model.
+     *
+     * @param featureId The feature id.
+     * @param counts Scratch space for the counts of the feature, as long as
+     *    the category dictionary.
+     * @param logLikelihoods Receives the log likelihoods, indexed by
+     *    category id, as long as the counts.
+     */
+    void scoredLogLikelihoods(int featureId, int[] counts, double[] logLikelihoods) {
+        this.featureCounts(featureId, counts);
+        int vocabularySize = this.getVocabularySize();
+        for (int categoryId = 0; categoryId < counts.length; categoryId++) {
+            logLikelihoods[categoryId] = Math.log(
+                    ((double) counts[categoryId] + Classifier.DEFAULT_LAMBDA)
+                            / ((double) this.categoryFeatureCount(categoryId)
+                                    + vocabularySize * Classifier.DEFAULT_LAMBDA));
+        }
+    }
+
+    /**
+     * Freezes the current knowledge into an immutable model for inference
+     * only.  The model precomputes all log probabilities, so classifying
+     * with it is a matter of table lookups and additions, and it can be
+     * shared across threads without locking.  The log likelihoods are the
+     * ones classify sums up at the time of freezing, so a
+     * {@link BayesClassifier}'s scoring mode and custom calculator are baked
+     * in.  Later training, and later changes to the mode or the calculator,
+     * do not affect the model.
+     *
+     * @return The frozen model.
+     */
+    public FrozenBayesModel<F, C> freeze() {
+        return new FrozenBayesModel<F, C>(this);
+    }
+
+    /**
+     * Freezes the current knowledge like {@link #freeze()}, storing the log
+     * likelihoods in single precision for half the memory.
+     *
+     * @return The frozen model.
+     */
+    public FloatBayesModel<F, C> freezeFloat() {
+        return new FloatBayesModel<F, C>(this);
+    }
+
+    /**
+     * Freezes the current knowledge like {@link #freeze()}, storing the log
+     * likelihoods as fixed-point integers with a scale factor per category,
+     * for a quarter or an eighth of the memory.
+     *
+     * @param bits The number of bits per log likelihood, 8 or 16.
+     * @return The frozen model.
+     */
+    public QuantizedBayesModel<F, C> freezeQuantized(int bits) {
+        return new QuantizedBayesModel<F, C>(this, bits);
+    }
+
     /**
      * The classify method.
      *
@@ -371,4 +967,15 @@ public abstract class Classifier<F, C> implements FeatureProbability<F, C> {
      */
     public abstract Classification<F, C> classify(Collection<F> features);
 
+    /**
+     * Classifies features already resolved through the feature dictionary.
+     * Unknown features are given as {@link FeatureDictionary#UNKNOWN}.
+     *
+     * @param featureIds The ids of the features to classify.
+     * @return The category most likely.
+     */
+    public Classification<F, C> classify(int[] featureIds) {
+        return this.classify(this.featureDictionary.features(featureIds));
+    }
+
 }
@@ -0,0 +1,301 @@
+package cn.hutao.bayes;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link BayesClassifier} that any number of threads can train and query
+ * at the same time.  Its counts live in a {@link ConcurrentCountStore} and
+ * its ids are handed out by {@link ConcurrentFeatureDictionary}s, so
+ * concurrent calls to learn never lose a count and never wait for each
+ * other once their features are known.  The model version is an atomic
+ * counter advanced after every update, so the cached per-category values of
+ * the classifier and any {@link ClassificationCache} notice every change.
+ * <p>
+ * The concurrent mode differs from the sequential one in a few ways:
+ * <ul>
+ * <li>It keeps no example memory and never forgets: a shared ring of
+ * examples would serialize every learn call.  Counts can still be removed
+ * explicitly with the decrement methods, which never take a count below
+ * zero.</li>
+ * <li>The vocabulary filter is not maintained; features are resolved through
+ * the dictionary directly.</li>
+ * <li>The number of categories is fixed at construction.</li>
+ * <li>A classify call running concurrently with learn calls sees each count
+ * as of some moment, but not necessarily all counts of an example.</li>
+ * </ul>
+ * {@link #reset()} must not run concurrently with other calls.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class ConcurrentBayesClassifier<F, C> extends BayesClassifier<F, C> {
+
+    /**
+     * The store holding the counts, also known to the superclass.
+     */
+    private final ConcurrentCountStore store;
+
+    /**
+     * The model version, advanced by every change to the learned counts.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The model version at which the counts of each category last changed.
+     */
+    private final AtomicLongArray categoryVersions;
+
+    /**
+     * Constructs a new classifier without any trained knowledge.
+     *
+     * @param maxCategories The number of categories the classifier can
+     *    learn.
+     */
+    public ConcurrentBayesClassifier(int maxCategories) {
+        this(new ConcurrentCountStore(maxCategories));
+    }
+
+    /**
+     * Constructs a new classifier keeping its counts in the given store.
+     *
+     * @param store The store.
+     */
+    private ConcurrentBayesClassifier(ConcurrentCountStore store) {
+        super(store, new ConcurrentFeatureDictionary<F>(), new ConcurrentFeatureDictionary<C>());
+        this.store = store;
+        this.categoryVersions = new AtomicLongArray(store.getMaxCategories());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        if (this.categoryVersions != null) {
+            this.invalidate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void invalidate() {
+        long invalidated = this.version.get() + 1;
+        for (int categoryId = 0; categoryId < this.categoryVersions.length(); categoryId++) {
+            long stamp;
+            while ((stamp = this.categoryVersions.get(categoryId)) < invalidated
+                    && !this.categoryVersions.compareAndSet(categoryId, stamp, invalidated)) {
+                continue;
+            }
+        }
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getModelVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getCategoryVersion(int categoryId) {
+        return (categoryId >= 0 && categoryId < this.categoryVersions.length())
+                ? this.categoryVersions.get(categoryId) : 0;
+    }
+
+    /**
+     * Advances the model version after the counts of a category changed.
+     * The category is stamped with the next version before the model version
+     * reaches it, so a reader that sees the new model version also sees the
+     * stamp and recomputes the category.  If another thread advances the
+     * model version in between, the category is stamped again with the
+     * following version.  The stamp only ever moves forward.
+     *
+     * @param categoryId The id of the changed category.
+     */
+    private void touch(int categoryId) {
+        long current;
+        long updated;
+        do {
+            current = this.version.get();
+            updated = current + 1;
+            long stamp;
+            while ((stamp = this.categoryVersions.get(categoryId)) < updated
+                    && !this.categoryVersions.compareAndSet(categoryId, stamp, updated)) {
+                continue;
+            }
+        } while (!this.version.compareAndSet(current, updated));
+    }
+
+    /**
+     * Resolves a feature to its id without interning it, bypassing the
+     * vocabulary filter.
+     *
+     * @param feature The feature.
+     * @return The id, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    @Override
+    protected int featureId(F feature) {
+        int featureId = this.getFeatureDictionary().id(feature);
+        return (featureId == FeatureDictionary.UNKNOWN
+                || this.store.totalFeatureCount(featureId) == 0)
+                ? FeatureDictionary.UNKNOWN : featureId;
+    }
+
+    /**
+     * Not supported, the concurrent classifier keeps no example memory.
+     *
+     * @param memoryCapacity Ignored.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void setMemoryCapacity(int memoryCapacity) {
+        throw new UnsupportedOperationException(
+                "A concurrent classifier does not forget examples");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(F feature, C category) {
+        int categoryId = this.getCategoryDictionary().intern(category);
+        this.store.incrementFeature(this.internFeature(feature), categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(F feature, C category, int n) {
+        Classifier.checkCount(n);
+        int categoryId = this.getCategoryDictionary().intern(category);
+        this.store.incrementFeature(this.internFeature(feature), categoryId, n);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(C category) {
+        int categoryId = this.getCategoryDictionary().intern(category);
+        this.store.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(C category, int n) {
+        Classifier.checkCount(n);
+        int categoryId = this.getCategoryDictionary().intern(category);
+        this.store.incrementCategory(categoryId, n);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(F feature, C category) {
+        int featureId = this.getFeatureDictionary().id(feature);
+        int categoryId = this.getCategoryDictionary().id(category);
+        if (featureId != FeatureDictionary.UNKNOWN
+                && categoryId != FeatureDictionary.UNKNOWN) {
+            this.store.decrementFeature(featureId, categoryId);
+            this.touch(categoryId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementCategory(C category) {
+        int categoryId = this.getCategoryDictionary().id(category);
+        if (categoryId != FeatureDictionary.UNKNOWN) {
+            this.store.decrementCategory(categoryId);
+            this.touch(categoryId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void learn(Classification<F, C> classification) {
+        int categoryId = this.getCategoryDictionary().intern(classification.getCategory());
+        Collection<F> features = classification.getFeatureset();
+        for (F feature : features) {
+            this.store.incrementFeature(this.internFeature(feature), categoryId);
+        }
+        this.store.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void learn(C category, int[] featureIds) {
+        this.checkFeatureIds(featureIds);
+        int categoryId = this.getCategoryDictionary().intern(category);
+        for (int featureId : featureIds) {
+            this.store.incrementFeature(featureId, categoryId);
+        }
+        this.store.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void learn(C category, Map<F, Integer> featureCounts) {
+        for (Integer count : featureCounts.values()) {
+            Classifier.checkCount(count);
+        }
+        int categoryId = this.getCategoryDictionary().intern(category);
+        for (Map.Entry<F, Integer> entry : featureCounts.entrySet()) {
+            this.store.incrementFeature(this.internFeature(entry.getKey()), categoryId,
+                    entry.getValue());
+        }
+        this.store.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void learn(C category, int[] featureIds, int[] featureCounts) {
+        if (featureIds.length != featureCounts.length) {
+            throw new IllegalArgumentException("Got " + featureIds.length + " feature ids but "
+                    + featureCounts.length + " counts");
+        }
+        this.checkFeatureIds(featureIds);
+        for (int count : featureCounts) {
+            Classifier.checkCount(count);
+        }
+        int categoryId = this.getCategoryDictionary().intern(category);
+        for (int i = 0; i < featureIds.length; i++) {
+            this.store.incrementFeature(featureIds[i], categoryId, featureCounts[i]);
+        }
+        this.store.incrementCategory(categoryId);
+        this.touch(categoryId);
+    }
+
+}
@@ -0,0 +1,363 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count store that many threads can update at once without losing counts
+ * and without a lock on the update path.  Every count is a slot of an
+ * {@link AtomicIntegerArray} updated with a single atomic add, or a
+ * compare-and-set loop for decrements that must not go below zero.  The
+ * per-category sums of feature counts and the categories total, which every
+ * learned example updates, are {@link LongAdder}s, so threads learning the
+ * same category add to different cells instead of contending on one slot.
+ * <p>
+ * The counts are paged, feature-major arrays with one slot per category
+ * plus the feature's total, so the number of categories is fixed when the
+ * store is constructed.  A page is never moved once allocated; growing the
+ * page directory takes a lock, which happens once per
+ * {@value #PAGE_FEATURES} new features.  Readers see every count as of some
+ * moment, but not necessarily the counts of a whole example at once.
+ * {@link #clear()} must not run concurrently with updates.
+ */
+public class ConcurrentCountStore implements CountStore {
+
+    /**
+     * The number of features per page.
+     */
+    private static final int PAGE_FEATURES = 1024;
+
+    /**
+     * The number of categories the store can hold.
+     */
+    private final int maxCategories;
+
+    /**
+     * The number of slots per feature, the feature's total followed by its
+     * count in each category.
+     */
+    private final int stride;
+
+    /**
+     * The pages of feature counts, null until a feature of the page is
+     * counted.  Replaced, never modified, when the directory grows.
+     */
+    private volatile AtomicIntegerArray[] pages;
+
+    /**
+     * The number of features with a positive total count.
+     */
+    private final AtomicInteger distinctFeatureCount = new AtomicInteger();
+
+    /**
+     * The category counts, indexed by category id.
+     */
+    private final AtomicIntegerArray totalCategoryCount;
+
+    /**
+     * The sum of all feature counts of each category, indexed by category id.
+     */
+    private final LongAdder[] categoryFeatureCount;
+
+    /**
+     * The sum of all category counts.
+     */
+    private final LongAdder categoriesTotal = new LongAdder();
+
+    /**
+     * Constructs a new, empty store.
+     *
+     * @param maxCategories The number of categories the store can hold.
+     */
+    public ConcurrentCountStore(int maxCategories) {
+        if (maxCategories < 1) {
+            throw new IllegalArgumentException("maxCategories must be positive: "
+                    + maxCategories);
+        }
+        this.maxCategories = maxCategories;
+        this.stride = maxCategories + 1;
+        this.totalCategoryCount = new AtomicIntegerArray(maxCategories);
+        this.categoryFeatureCount = new LongAdder[maxCategories];
+        for (int categoryId = 0; categoryId < maxCategories; categoryId++) {
+            this.categoryFeatureCount[categoryId] = new LongAdder();
+        }
+        this.pages = new AtomicIntegerArray[0];
+    }
+
+    /**
+     * Retrieves the number of categories the store can hold.
+     *
+     * @return The maximum number of categories.
+     */
+    public int getMaxCategories() {
+        return this.maxCategories;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId) {
+        this.incrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId, int n) {
+        if (n <= 0) {
+            return;
+        }
+        this.checkCategory(categoryId);
+        AtomicIntegerArray page = this.page(featureId);
+        int offset = this.offset(featureId);
+        page.getAndAdd(offset + 1 + categoryId, n);
+        this.categoryFeatureCount[categoryId].add(n);
+        if (page.getAndAdd(offset, n) == 0) {
+            this.distinctFeatureCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId) {
+        this.decrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * Removes up to n occurrences, never more than the count holds even if
+     * other threads decrement the same count at the same time.
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId, int n) {
+        AtomicIntegerArray page = this.existingPage(featureId);
+        if (n <= 0 || page == null || categoryId < 0 || categoryId >= this.maxCategories) {
+            return;
+        }
+        int offset = this.offset(featureId);
+        int slot = offset + 1 + categoryId;
+        int count;
+        int removed;
+        do {
+            count = page.get(slot);
+            removed = Math.min(n, count);
+            if (removed <= 0) {
+                return;
+            }
+        } while (!page.compareAndSet(slot, count, count - removed));
+        this.categoryFeatureCount[categoryId].add(-removed);
+        if (page.addAndGet(offset, -removed) == 0) {
+            this.distinctFeatureCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId) {
+        this.checkCategory(categoryId);
+        this.totalCategoryCount.incrementAndGet(categoryId);
+        this.categoriesTotal.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId, int n) {
+        if (n <= 0) {
+            return;
+        }
+        this.checkCategory(categoryId);
+        this.totalCategoryCount.addAndGet(categoryId, n);
+        this.categoriesTotal.add(n);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementCategory(int categoryId) {
+        if (categoryId < 0 || categoryId >= this.maxCategories) {
+            return;
+        }
+        int count;
+        do {
+            count = this.totalCategoryCount.get(categoryId);
+            if (count <= 0) {
+                return;
+            }
+        } while (!this.totalCategoryCount.compareAndSet(categoryId, count, count - 1));
+        this.categoriesTotal.decrement();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int featureCount(int featureId, int categoryId) {
+        AtomicIntegerArray page = this.existingPage(featureId);
+        return (page == null || categoryId < 0 || categoryId >= this.maxCategories) ? 0
+                : page.get(this.offset(featureId) + 1 + categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void featureCounts(int featureId, int[] counts) {
+        AtomicIntegerArray page = this.existingPage(featureId);
+        int length = Math.min(counts.length, this.maxCategories);
+        if (page == null) {
+            length = 0;
+        } else {
+            int offset = this.offset(featureId) + 1;
+            for (int categoryId = 0; categoryId < length; categoryId++) {
+                counts[categoryId] = page.get(offset + categoryId);
+            }
+        }
+        Arrays.fill(counts, length, counts.length, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalFeatureCount(int featureId) {
+        AtomicIntegerArray page = this.existingPage(featureId);
+        return (page == null) ? 0 : page.get(this.offset(featureId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryFeatureCount(int categoryId) {
+        return (categoryId < 0 || categoryId >= this.maxCategories) ? 0
+                : (int) this.categoryFeatureCount[categoryId].sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryCount(int categoryId) {
+        return (categoryId < 0 || categoryId >= this.maxCategories) ? 0
+                : this.totalCategoryCount.get(categoryId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCategoriesTotal() {
+        return (int) this.categoriesTotal.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctFeatureCount() {
+        return this.distinctFeatureCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.pages = new AtomicIntegerArray[0];
+        this.distinctFeatureCount.set(0);
+        for (int categoryId = 0; categoryId < this.maxCategories; categoryId++) {
+            this.totalCategoryCount.set(categoryId, 0);
+            this.categoryFeatureCount[categoryId].reset();
+        }
+        this.categoriesTotal.reset();
+    }
+
+    /**
+     * Rejects category ids beyond the fixed capacity.
+     *
+     * @param categoryId The category id.
+     */
+    private void checkCategory(int categoryId) {
+        if (categoryId >= this.maxCategories) {
+            throw new IllegalStateException("Concurrent count store holds at most "
+                    + this.maxCategories + " categories, got category id " + categoryId);
+        }
+    }
+
+    /**
+     * Retrieves the index of a feature's total within its page.
+     *
+     * @param featureId The feature id.
+     * @return The offset.
+     */
+    private int offset(int featureId) {
+        return (featureId % ConcurrentCountStore.PAGE_FEATURES) * this.stride;
+    }
+
+    /**
+     * Retrieves the page of a feature if it was allocated.
+     *
+     * @param featureId The feature id.
+     * @return The page, or null.
+     */
+    private AtomicIntegerArray existingPage(int featureId) {
+        if (featureId < 0) {
+            return null;
+        }
+        AtomicIntegerArray[] directory = this.pages;
+        int index = featureId / ConcurrentCountStore.PAGE_FEATURES;
+        return (index < directory.length) ? directory[index] : null;
+    }
+
+    /**
+     * Retrieves the page of a feature, allocating it if needed.
+     *
+     * @param featureId The feature id.
+     * @return The page.
+     */
+    private AtomicIntegerArray page(int featureId) {
+        AtomicIntegerArray page = this.existingPage(featureId);
+        return (page == null) ? this.allocatePage(featureId / ConcurrentCountStore.PAGE_FEATURES)
+                : page;
+    }
+
+    /**
+     * Allocates a page, growing the directory if needed.  Another thread may
+     * have allocated it in the meantime, in which case that page is used.
+     *
+     * @param index The page index.
+     * @return The page.
+     */
+    private synchronized AtomicIntegerArray allocatePage(int index) {
+        AtomicIntegerArray[] directory = this.pages;
+        if (index < directory.length && directory[index] != null) {
+            return directory[index];
+        }
+        AtomicIntegerArray[] grown = Arrays.copyOf(directory, (index < directory.length)
+                ? directory.length : Math.max(index + 1, directory.length << 1));
+        AtomicIntegerArray page = new AtomicIntegerArray(
+                ConcurrentCountStore.PAGE_FEATURES * this.stride);
+        grown[index] = page;
+        this.pages = grown;
+        return page;
+    }
+
+}
@@ -0,0 +1,128 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link FeatureDictionary} that many threads can intern into and read
+ * from at once.  Lookups of known objects go to a {@link ConcurrentHashMap}
+ * without locking; only assigning a new id takes the dictionary's lock, so
+ * once the vocabulary has settled, interning never blocks.  The objects are
+ * kept in pages indexed by id that are never moved, so resolving an id does
+ * not lock either.  {@link #clear()} must not run concurrently with other
+ * calls.
+ *
+ * @param <F> The class of the interned objects.
+ */
+public class ConcurrentFeatureDictionary<F> extends FeatureDictionary<F> {
+
+    /**
+     * The number of objects per page.
+     */
+    private static final int PAGE_SIZE = 1024;
+
+    /**
+     * The ids of the interned objects.
+     */
+    private final ConcurrentHashMap<F, Integer> ids = new ConcurrentHashMap<F, Integer>();
+
+    /**
+     * The interned objects in pages indexed by id.  The directory is copied
+     * when it grows; the pages are never moved.
+     */
+    private volatile Object[][] pages = new Object[0][];
+
+    /**
+     * The number of interned objects.  Written after the object is stored,
+     * so every id below it can be resolved.
+     */
+    private volatile int size;
+
+    /**
+     * Constructs a new, empty dictionary.
+     */
+    public ConcurrentFeatureDictionary() {
+        super(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int id(F feature) {
+        if (feature == null) {
+            return FeatureDictionary.UNKNOWN;
+        }
+        Integer id = this.ids.get(feature);
+        return (id == null) ? FeatureDictionary.UNKNOWN : id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int intern(F feature) {
+        Integer id = this.ids.get(feature);
+        return (id == null) ? this.assign(feature) : id;
+    }
+
+    /**
+     * Assigns the next free id to an object unless another thread did so
+     * first.
+     *
+     * @param feature The object to intern.
+     * @return The id.
+     */
+    private synchronized int assign(F feature) {
+        Integer existing = this.ids.get(feature);
+        if (existing != null) {
+            return existing;
+        }
+        int id = this.size;
+        int index = id / ConcurrentFeatureDictionary.PAGE_SIZE;
+        Object[][] directory = this.pages;
+        if (index == directory.length) {
+            directory = Arrays.copyOf(directory, Math.max(1, directory.length << 1));
+        }
+        if (directory[index] == null) {
+            directory[index] = new Object[ConcurrentFeatureDictionary.PAGE_SIZE];
+        }
+        directory[index][id % ConcurrentFeatureDictionary.PAGE_SIZE] = feature;
+        this.pages = directory;
+        this.size = id + 1;
+        this.ids.put(feature, id);
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public F feature(int id) {
+        if (id < 0 || id >= this.size) {
+            return null;
+        }
+        return (F) this.pages[id / ConcurrentFeatureDictionary.PAGE_SIZE]
+                [id % ConcurrentFeatureDictionary.PAGE_SIZE];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clear() {
+        this.ids.clear();
+        this.pages = new Object[0][];
+        this.size = 0;
+    }
+
+}
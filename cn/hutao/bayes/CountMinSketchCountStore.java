@@ -0,0 +1,218 @@
+package cn.hutao.bayes;
+
+/**
+ * A count store approximating the per-(feature, category) counts with a
+ * Count-Min Sketch of fixed size, for streams whose vocabulary grows without
+ * bound.  The sketch is a {@code depth x width} matrix of int counters; every
+ * (feature, category) pair is hashed to one counter per row and its count is
+ * estimated as the minimum of those counters.  By default increments use
+ * the conservative update, raising only the counters that are below the new
+ * estimate, which keeps overcounting much lower than the standard update.
+ * The totals per feature and per category stay exact.
+ * <p>
+ * Error bounds: if the feature counts of all categories sum up to N, an
+ * estimate overcounts by at most {@code e / width * N} with probability at
+ * least {@code 1 - e^-depth}.  With the standard update an estimate never
+ * undercounts, even when the classifier's forgetting memory decrements.  With
+ * the conservative update that holds only for insert-only streams: a
+ * decrement subtracts from every row, including counters the conservative
+ * update left to a colliding pair, so after forgetting an estimate may also
+ * undercount by up to the same bound.  Disable it for models that forget a
+ * lot.  A decrement removes at most the estimate of the pair, so decrementing
+ * a pair that was never incremented leaves the exact totals alone unless it
+ * collides with pairs that were; when the conservative update made the
+ * estimate undercount, forgetting a pair leaves the difference in the totals.
+ * <p>
+ * Memory: only the per-(feature, category) counts are fixed in size.  The
+ * exact per-feature totals are an int per feature id, and the classifier's
+ * {@link FeatureDictionary} keeps every feature it has seen, so both still
+ * grow with the vocabulary.  To bound them too, use the store with a
+ * {@link HashedBayesClassifier}, whose feature ids are hash buckets.
+ */
+public class CountMinSketchCountStore extends AbstractCountStore {
+
+    /**
+     * The number of counters per row.
+     */
+    private final int width;
+
+    /**
+     * The number of rows, each with its own hash function.
+     */
+    private final int depth;
+
+    /**
+     * Whether increments use the conservative update.
+     */
+    private final boolean conservative;
+
+    /**
+     * The counters, row by row.
+     */
+    private int[] sketch;
+
+    /**
+     * Constructs a new, empty sketch of the given dimensions using the
+     * conservative update.  The sketch takes {@code 4 * width * depth} bytes.
+     *
+     * @param width The number of counters per row.
+     * @param depth The number of rows.
+     */
+    public CountMinSketchCountStore(int width, int depth) {
+        this(width, depth, true);
+    }
+
+    /**
+     * Constructs a new, empty sketch of the given dimensions.  The sketch
+     * takes {@code 4 * width * depth} bytes.
+     *
+     * @param width The number of counters per row.
+     * @param depth The number of rows.
+     * @param conservative Whether increments use the conservative update.
+     */
+    public CountMinSketchCountStore(int width, int depth, boolean conservative) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException(
+                    "width and depth must be positive: " + width + "x" + depth);
+        }
+        if ((long) width * depth > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(
+                    "Sketch too large: " + width + "x" + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.conservative = conservative;
+        this.clear();
+    }
+
+    /**
+     * Constructs a new, empty sketch sized for the given error bounds: each
+     * estimate overcounts by at most {@code epsilon * N} with probability at
+     * least {@code 1 - delta}.
+     *
+     * @param epsilon The relative error.
+     * @param delta The probability of exceeding the error.
+     * @return The store.
+     */
+    public static CountMinSketchCountStore forErrorBounds(double epsilon, double delta) {
+        if (epsilon <= 0 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException(
+                    "Invalid error bounds: epsilon=" + epsilon + ", delta=" + delta);
+        }
+        return new CountMinSketchCountStore((int) Math.ceil(Math.E / epsilon),
+                (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    /**
+     * Retrieves the number of counters per row.
+     *
+     * @return The width.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Retrieves the number of rows.
+     *
+     * @return The depth.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addFeatureCount(int featureId, int categoryId, int delta) {
+        long key = ((long) featureId << 32) | (categoryId & 0xFFFFFFFFL);
+        if (delta > 0 && this.conservative) {
+            int target = this.estimate(key) + delta;
+            for (int row = 0; row < this.depth; row++) {
+                int index = this.index(key, row);
+                if (this.sketch[index] < target) {
+                    this.sketch[index] = target;
+                }
+            }
+        } else {
+            for (int row = 0; row < this.depth; row++) {
+                int index = this.index(key, row);
+                this.sketch[index] = Math.max(0, this.sketch[index] + delta);
+            }
+        }
+    }
+
+    /**
+     * Bounds a decrement by the estimate of the pair, and by the exact totals
+     * of the feature and the category, so that decrementing a pair never
+     * counted cannot take occurrences from the totals of other pairs.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @return The count that can be removed.
+     */
+    @Override
+    protected int removableFeatureCount(int featureId, int categoryId) {
+        return Math.min(this.featureCount(featureId, categoryId),
+                Math.min(this.totalFeatureCount(featureId),
+                        this.categoryFeatureCount(categoryId)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int featureCount(int featureId, int categoryId) {
+        return this.estimate(((long) featureId << 32) | (categoryId & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Tells whether the per-(feature, category) counts are exact, which the
+     * estimates of a sketch are not.
+     *
+     * @return False.
+     */
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void clearFeatureCounts() {
+        this.sketch = new int[this.width * this.depth];
+    }
+
+    /**
+     * Estimates the count of a (feature, category) pair.
+     *
+     * @param key The pair packed into a long.
+     * @return The minimum over all rows.
+     */
+    private int estimate(long key) {
+        int toReturn = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            toReturn = Math.min(toReturn, this.sketch[this.index(key, row)]);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Retrieves the counter index of a pair in a row.
+     *
+     * @param key The pair packed into a long.
+     * @param row The row.
+     * @return The index into the sketch.
+     */
+    private int index(long key, int row) {
+        long h = (key + (row + 1) * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        h ^= h >>> 29;
+        return row * this.width + (int) ((h >>> 1) % this.width);
+    }
+
+}
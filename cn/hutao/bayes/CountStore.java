@@ -0,0 +1,148 @@
+package cn.hutao.bayes;
+
+/**
+ * Storage backend for the feature and category counts a classifier learns.
+ * Features and categories are addressed by the dense ids their
+ * {@link FeatureDictionary} assigned.  Implementations decide how the counts
+ * are laid out in memory; the classifier only relies on the operations
+ * defined here.
+ */
+public interface CountStore {
+
+    /**
+     * Increments the count of a feature in a category and the feature's total
+     * count.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The id of the category the feature occurred in.
+     */
+    public void incrementFeature(int featureId, int categoryId);
+
+    /**
+     * Decrements the count of a feature in a category and the feature's total
+     * count.  Features that did not occur in the category are ignored.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     */
+    public void decrementFeature(int featureId, int categoryId);
+
+    /**
+     * Adds a number of occurrences of a feature in a category at once, as if
+     * {@link #incrementFeature(int, int)} were called that many times.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The id of the category the feature occurred in.
+     * @param n The number of occurrences, positive.
+     */
+    public void incrementFeature(int featureId, int categoryId, int n);
+
+    /**
+     * Removes a number of occurrences of a feature in a category at once, as
+     * if {@link #decrementFeature(int, int)} were called that many times.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @param n The number of occurrences, positive.
+     */
+    public void decrementFeature(int featureId, int categoryId, int n);
+
+    /**
+     * Increments the count of a category.
+     *
+     * @param categoryId The category id.
+     */
+    public void incrementCategory(int categoryId);
+
+    /**
+     * Adds a number of occurrences of a category at once, as if
+     * {@link #incrementCategory(int)} were called that many times.
+     *
+     * @param categoryId The category id.
+     * @param n The number of occurrences, positive.
+     */
+    public void incrementCategory(int categoryId, int n);
+
+    /**
+     * Decrements the count of a category.  Categories with a count of zero are
+     * ignored.
+     *
+     * @param categoryId The category id.
+     */
+    public void decrementCategory(int categoryId);
+
+    /**
+     * Retrieves the number of occurrences of a feature in a category.
+     *
+     * @param featureId The feature id.
+     * @param categoryId The category id.
+     * @return The count, zero if unknown.
+     */
+    public int featureCount(int featureId, int categoryId);
+
+    /**
+     * Retrieves the number of occurrences of a feature in every category at
+     * once.  The scoring loop calls this once per feature, so layouts that
+     * keep a feature's counts together can serve it with a single copy.
+     *
+     * @param featureId The feature id.
+     * @param counts Receives the count of category id i at index i, for every
+     *    index of the array.
+     */
+    public void featureCounts(int featureId, int[] counts);
+
+    /**
+     * Retrieves the number of occurrences of a feature in all categories.
+     *
+     * @param featureId The feature id.
+     * @return The count, zero if unknown.
+     */
+    public int totalFeatureCount(int featureId);
+
+    /**
+     * Retrieves the total number of features in a category.  Implementations
+     * maintain this sum on every update so that it is a constant-time lookup.
+     *
+     * @param categoryId The category id.
+     * @return The sum of all feature counts in the category.
+     */
+    public int categoryFeatureCount(int categoryId);
+
+    /**
+     * Retrieves the number of occurrences of a category.
+     *
+     * @param categoryId The category id.
+     * @return The count, zero if unknown.
+     */
+    public int categoryCount(int categoryId);
+
+    /**
+     * Retrieves the sum of all category counts.  Implementations maintain
+     * this sum on every update so that it is a constant-time lookup.
+     *
+     * @return The total category count.
+     */
+    public int getCategoriesTotal();
+
+    /**
+     * Retrieves the number of features with a positive total count.
+     *
+     * @return The vocabulary size.
+     */
+    public int distinctFeatureCount();
+
+    /**
+     * Tells whether the per-(feature, category) counts are exact.  An
+     * approximate store may report a count above the feature's total, so
+     * anything bounding a count by the total must not be used with it.
+     *
+     * @return Whether every count is exact.
+     */
+    public boolean isExact();
+
+    /**
+     * Forgets all counts.
+     */
+    public void clear();
+
+}
@@ -0,0 +1,163 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+
+/**
+ * A count store for models with few categories and a large vocabulary.  All
+ * per-(feature, category) counts live in one feature-major array at index
+ * {@code featureId * stride + categoryId}, so the counts of one feature in
+ * every category share a cache line and {@link #featureCounts(int, int[])} is
+ * a single array copy.  Unlike {@link HashCountStore} every known feature
+ * takes {@code stride} slots whether or not it occurred in each category.
+ * When a category id beyond the stride appears, the whole array is laid out
+ * again with a doubled stride.
+ */
+public class DenseCountStore extends AbstractCountStore {
+
+    /**
+     * The number of category slots reserved per feature.
+     */
+    private int stride;
+
+    /**
+     * The stride used after clearing.
+     */
+    private final int initialStride;
+
+    /**
+     * The number of features room is reserved for after clearing.
+     */
+    private final int initialFeatures;
+
+    /**
+     * The feature-major count matrix.
+     */
+    private int[] counts;
+
+    /**
+     * Constructs a new, empty store sized for a few categories.
+     */
+    public DenseCountStore() {
+        this(AbstractCountStore.INITIAL_CATEGORY_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty store sized for the given number of categories.
+     *
+     * @param expectedCategories The expected number of categories.
+     */
+    public DenseCountStore(int expectedCategories) {
+        this(expectedCategories, AbstractCountStore.INITIAL_FEATURE_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty store sized for the given number of categories
+     * and features, so that feature ids below the expected number never grow
+     * the matrix.
+     *
+     * @param expectedCategories The expected number of categories.
+     * @param expectedFeatures The expected number of features.
+     */
+    public DenseCountStore(int expectedCategories, int expectedFeatures) {
+        if (expectedCategories < 1 || expectedFeatures < 1) {
+            throw new IllegalArgumentException("Expected sizes must be positive: "
+                    + expectedCategories + " categories, " + expectedFeatures + " features");
+        }
+        if ((long) expectedCategories * expectedFeatures > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Dense count matrix too large: "
+                    + expectedCategories + " categories, " + expectedFeatures + " features");
+        }
+        this.initialStride = expectedCategories;
+        this.initialFeatures = expectedFeatures;
+        this.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addFeatureCount(int featureId, int categoryId, int delta) {
+        if (categoryId >= this.stride) {
+            this.restride(categoryId + 1);
+        }
+        long index = (long) featureId * this.stride + categoryId;
+        if (index >= this.counts.length) {
+            /*
+             * Grow by whole feature rows, so that a restride, which copies
+             * row by row, never finds a partial row at the end.
+             */
+            int maxFeatures = (Integer.MAX_VALUE - 8) / this.stride;
+            if (featureId >= maxFeatures) {
+                throw new IllegalStateException(
+                        "Dense count matrix exceeds the maximum array size");
+            }
+            long features = Math.max(featureId + 1L,
+                    ((long) this.counts.length / this.stride) << 1);
+            this.counts = Arrays.copyOf(this.counts,
+                    (int) Math.min(maxFeatures, features) * this.stride);
+        }
+        this.counts[(int) index] += delta;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int featureCount(int featureId, int categoryId) {
+        if (categoryId >= this.stride) {
+            return 0;
+        }
+        long index = (long) featureId * this.stride + categoryId;
+        return (index < this.counts.length) ? this.counts[(int) index] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void featureCounts(int featureId, int[] counts) {
+        long offset = (long) featureId * this.stride;
+        int length = (int) Math.max(0, Math.min(Math.min(counts.length, this.stride),
+                this.counts.length - offset));
+        if (length > 0) {
+            System.arraycopy(this.counts, (int) offset, counts, 0, length);
+        }
+        Arrays.fill(counts, length, counts.length, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void clearFeatureCounts() {
+        this.stride = this.initialStride;
+        this.counts = new int[this.initialFeatures * this.stride];
+    }
+
+    /**
+     * Lays the matrix out again with a wider stride, doubling it if the
+     * matrix still fits into an array, or else widening it just enough.
+     *
+     * @param minStride The number of category slots per feature needed.
+     * @throws IllegalStateException If the matrix would exceed the maximum
+     *    array size; the store is left unchanged.
+     */
+    private void restride(int minStride) {
+        int features = (this.counts.length + this.stride - 1) / this.stride;
+        int maxStride = (features == 0) ? Integer.MAX_VALUE : (Integer.MAX_VALUE - 8) / features;
+        if (minStride > maxStride) {
+            throw new IllegalStateException("Dense count matrix exceeds the maximum array size: "
+                    + features + " features, " + minStride + " categories");
+        }
+        int newStride = (int) Math.min(maxStride, Math.max(minStride, (long) this.stride << 1));
+        int[] restrided = new int[Math.multiplyExact(features, newStride)];
+        for (int featureId = 0; featureId < features; featureId++) {
+            int offset = featureId * this.stride;
+            System.arraycopy(this.counts, offset, restrided, featureId * newStride,
+                    Math.min(this.stride, this.counts.length - offset));
+        }
+        this.counts = restrided;
+        this.stride = newStride;
+    }
+
+}
@@ -0,0 +1,195 @@
+package cn.hutao.bayes;
+
+/**
+ * The classifier's memory of learned examples, oldest first.  Instead of
+ * keeping the caller's feature collections alive, each example is encoded
+ * into one circular int buffer as its category id, its length and its
+ * feature ids, so remembering an example costs four bytes per feature plus
+ * eight and allocates nothing once the buffer has grown to size.  A feature
+ * learned with a count above one is stored as the negated count followed by
+ * the feature id; feature ids themselves are never negative.
+ */
+final class ExampleMemory {
+
+    /**
+     * The initial buffer size in ints, a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The number of ints preceding the feature ids of an example.
+     */
+    private static final int HEADER_SIZE = 2;
+
+    /**
+     * The circular buffer of encoded examples.
+     */
+    private int[] buffer;
+
+    /**
+     * The buffer position of the oldest example.
+     */
+    private int head;
+
+    /**
+     * The number of ints in use, including an example being written.
+     */
+    private int used;
+
+    /**
+     * The number of complete examples stored.
+     */
+    private int size;
+
+    /**
+     * The offset from the head of the example being written, or -1.
+     */
+    private int pending = -1;
+
+    /**
+     * Constructs a new, empty memory.
+     */
+    ExampleMemory() {
+        this.clear();
+    }
+
+    /**
+     * Starts writing a new example.  An example still being written, left
+     * behind by a learn call that failed halfway, is discarded first, so that
+     * the records stay aligned.
+     *
+     * @param categoryId The category id of the example.
+     */
+    void beginExample(int categoryId) {
+        if (this.pending >= 0) {
+            this.used = this.pending;
+        }
+        this.pending = this.used;
+        this.append(categoryId);
+        this.append(0);
+    }
+
+    /**
+     * Adds a feature to the example being written.
+     *
+     * @param featureId The feature id.
+     */
+    void addFeature(int featureId) {
+        this.append(featureId);
+    }
+
+    /**
+     * Adds a feature with a count to the example being written.
+     *
+     * @param featureId The feature id.
+     * @param count The number of occurrences, positive.
+     */
+    void addFeature(int featureId, int count) {
+        if (count != 1) {
+            this.append(-count);
+        }
+        this.append(featureId);
+    }
+
+    /**
+     * Completes the example being written, making it the newest example.
+     */
+    void endExample() {
+        int length = this.used - this.pending - ExampleMemory.HEADER_SIZE;
+        this.buffer[this.position(this.pending + 1)] = length;
+        this.pending = -1;
+        this.size++;
+    }
+
+    /**
+     * Retrieves the number of complete examples stored.
+     *
+     * @return The number of examples.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves the category id of the oldest example.
+     *
+     * @return The category id.
+     */
+    int oldestCategory() {
+        return this.buffer[this.head];
+    }
+
+    /**
+     * Retrieves the number of ints encoding the features of the oldest
+     * example.
+     *
+     * @return The encoded length.
+     */
+    int oldestLength() {
+        return this.buffer[this.position(1)];
+    }
+
+    /**
+     * Retrieves an encoded int of the oldest example: a feature id, or the
+     * negated count of the feature id following it.
+     *
+     * @param index The index of the int within the example.
+     * @return The feature id or negated count.
+     */
+    int oldestEntry(int index) {
+        return this.buffer[this.position(ExampleMemory.HEADER_SIZE + index)];
+    }
+
+    /**
+     * Drops the oldest example.
+     */
+    void removeOldest() {
+        int length = ExampleMemory.HEADER_SIZE + this.oldestLength();
+        this.head = this.position(length);
+        this.used -= length;
+        if (this.pending >= 0) {
+            this.pending -= length;
+        }
+        this.size--;
+    }
+
+    /**
+     * Drops all examples.
+     */
+    void clear() {
+        this.buffer = new int[ExampleMemory.INITIAL_CAPACITY];
+        this.head = 0;
+        this.used = 0;
+        this.size = 0;
+        this.pending = -1;
+    }
+
+    /**
+     * Appends one int, growing the buffer if it is full.
+     *
+     * @param value The value.
+     */
+    private void append(int value) {
+        if (this.used == this.buffer.length) {
+            int[] grown = new int[this.buffer.length << 1];
+            int firstPart = Math.min(this.used, this.buffer.length - this.head);
+            System.arraycopy(this.buffer, this.head, grown, 0, firstPart);
+            System.arraycopy(this.buffer, 0, grown, firstPart, this.used - firstPart);
+            this.buffer = grown;
+            this.head = 0;
+        }
+        this.buffer[this.position(this.used)] = value;
+        this.used++;
+    }
+
+    /**
+     * Translates an offset from the head into a buffer position.
+     *
+     * @param offset The offset.
+     * @return The position.
+     */
+    private int position(int offset) {
+        return (this.head + offset) & (this.buffer.length - 1);
+    }
+
+}
@@ -0,0 +1,74 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The ids of the features whose counts changed since the log was last
+ * cleared, each listed once.  A classifier given a log records every feature
+ * it counts or forgets, so that a snapshot can copy just the features that
+ * changed instead of the whole model.
+ */
+final class FeatureChangeLog {
+
+    /**
+     * The logged ids, as a set.
+     */
+    private final BitSet logged = new BitSet();
+
+    /**
+     * The logged ids in the order they were first logged.
+     */
+    private int[] featureIds = new int[16];
+
+    /**
+     * The number of logged ids.
+     */
+    private int size;
+
+    /**
+     * Logs a feature unless it is logged already.
+     *
+     * @param featureId The id of the changed feature.
+     */
+    void add(int featureId) {
+        if (!this.logged.get(featureId)) {
+            this.logged.set(featureId);
+            if (this.size == this.featureIds.length) {
+                this.featureIds = Arrays.copyOf(this.featureIds, this.size << 1);
+            }
+            this.featureIds[this.size++] = featureId;
+        }
+    }
+
+    /**
+     * Retrieves the number of logged features.
+     *
+     * @return The number of features.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves a logged feature.
+     *
+     * @param index The index, below {@link #size()}.
+     * @return The feature id.
+     */
+    int get(int index) {
+        return this.featureIds[index];
+    }
+
+    /**
+     * Empties the log, in time proportional to the number of logged
+     * features.
+     */
+    void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.logged.clear(this.featureIds[i]);
+        }
+        this.size = 0;
+    }
+
+}
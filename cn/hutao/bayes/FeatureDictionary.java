@@ -0,0 +1,193 @@
+package cn.hutao.bayes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interns objects to dense int ids.  The first object interned gets id 0, the
+ * next new one id 1 and so on; an id never changes until the dictionary is
+ * cleared.  The classifier uses one dictionary for its features and one for
+ * its categories and keeps all of its counts by id, so every feature is hashed
+ * once per call instead of once per category.
+ *
+ * @param <F> The class of the interned objects.
+ */
+public class FeatureDictionary<F> {
+
+    /**
+     * The id returned for objects that are not in the dictionary.
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * Initial capacity of the dictionary.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The ids of the interned objects.
+     */
+    private final ObjectIntHashMap<F> ids;
+
+    /**
+     * The interned objects, indexed by id.
+     */
+    private Object[] features;
+
+    /**
+     * Constructs a new, empty dictionary.
+     */
+    public FeatureDictionary() {
+        this(FeatureDictionary.INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty dictionary with room for the given number of
+     * objects, for subclasses that keep the objects elsewhere.  A capacity of
+     * zero allocates no storage at all, for subclasses that override every
+     * method reading it.
+     *
+     * @param capacity The initial capacity.
+     */
+    FeatureDictionary(int capacity) {
+        this.ids = (capacity == 0) ? null : new ObjectIntHashMap<F>(capacity);
+        this.features = (capacity == 0) ? null : new Object[capacity];
+    }
+
+    /**
+     * Constructs a new dictionary assigning the same ids as the given one.
+     *
+     * @param other The dictionary to copy.
+     */
+    public FeatureDictionary(FeatureDictionary<F> other) {
+        if (other.getClass() == FeatureDictionary.class) {
+            this.ids = new ObjectIntHashMap<F>(other.ids);
+            this.features = Arrays.copyOf(other.features, other.ids.size());
+        } else {
+            int size = other.size();
+            this.ids = new ObjectIntHashMap<F>(size);
+            this.features = new Object[size];
+            for (int id = 0; id < size; id++) {
+                this.features[id] = other.feature(id);
+                this.ids.put(other.feature(id), id);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the id of the given object without interning it.
+     *
+     * @param feature The object to look up.
+     * @return The id, or {@link #UNKNOWN} if the object is null or was never
+     *    interned.
+     */
+    public int id(F feature) {
+        return (feature == null)
+                ? FeatureDictionary.UNKNOWN
+                : this.ids.get(feature, FeatureDictionary.UNKNOWN);
+    }
+
+    /**
+     * Retrieves the ids of the given objects without interning them.
+     *
+     * @param features The objects to look up.
+     * @return The ids in iteration order, {@link #UNKNOWN} for objects that
+     *    were never interned.
+     */
+    public int[] ids(Collection<? extends F> features) {
+        int[] toReturn = new int[features.size()];
+        int i = 0;
+        for (F feature : features) {
+            toReturn[i++] = this.id(feature);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Retrieves the id of the given object, assigning the next free id if the
+     * object is new.
+     *
+     * @param feature The object to intern.
+     * @return The id.
+     */
+    public int intern(F feature) {
+        int id = this.ids.get(feature, FeatureDictionary.UNKNOWN);
+        if (id == FeatureDictionary.UNKNOWN) {
+            id = this.ids.size();
+            if (id == this.features.length) {
+                this.features = Arrays.copyOf(this.features, Math.max(id << 1, 8));
+            }
+            this.features[id] = feature;
+            this.ids.put(feature, id);
+        }
+        return id;
+    }
+
+    /**
+     * Interns all given objects.
+     *
+     * @param features The objects to intern.
+     * @return The ids in iteration order.
+     */
+    public int[] intern(Collection<? extends F> features) {
+        int[] toReturn = new int[features.size()];
+        int i = 0;
+        for (F feature : features) {
+            toReturn[i++] = this.intern(feature);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Retrieves the object with the given id.
+     *
+     * @param id The id.
+     * @return The object, or null for ids the dictionary did not assign.
+     */
+    @SuppressWarnings("unchecked")
+    public F feature(int id) {
+        return (id < 0 || id >= this.ids.size()) ? null : (F) this.features[id];
+    }
+
+    /**
+     * Retrieves a read-only list view resolving the given ids to their
+     * objects.  The array is not copied.
+     *
+     * @param ids The ids.
+     * @return The objects, null for ids the dictionary did not assign.
+     */
+    public List<F> features(final int[] ids) {
+        return new AbstractList<F>() {
+
+            @Override
+            public F get(int index) {
+                return FeatureDictionary.this.feature(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the number of interned objects, which is also the next id.
+     *
+     * @return The dictionary size.
+     */
+    public int size() {
+        return this.ids.size();
+    }
+
+    /**
+     * Forgets all interned objects.  Previously returned ids become invalid.
+     */
+    public void clear() {
+        this.ids.clear();
+        this.features = new Object[FeatureDictionary.INITIAL_CAPACITY];
+    }
+
+}
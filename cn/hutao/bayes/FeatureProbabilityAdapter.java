@@ -0,0 +1,48 @@
+package cn.hutao.bayes;
+
+/**
+ * Adapts a scalar {@link FeatureProbability} to {@link BulkFeatureProbability}
+ * by asking it for each category in turn, resolving category ids through the
+ * classifier's category dictionary.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class FeatureProbabilityAdapter<F, C> implements BulkFeatureProbability<F, C> {
+
+    /**
+     * The scalar calculator.
+     */
+    private final FeatureProbability<F, C> calculator;
+
+    /**
+     * The dictionary the category ids were assigned by.
+     */
+    private final FeatureDictionary<C> categories;
+
+    /**
+     * Constructs a new adapter.
+     *
+     * @param calculator The scalar calculator.
+     * @param categories The category dictionary of the classifier.
+     */
+    public FeatureProbabilityAdapter(FeatureProbability<F, C> calculator,
+                                     FeatureDictionary<C> categories) {
+        this.calculator = calculator;
+        this.categories = categories;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void featureLogProbabilities(F feature, double[] logProbabilities) {
+        for (int categoryId = 0; categoryId < logProbabilities.length; categoryId++) {
+            C category = this.categories.feature(categoryId);
+            logProbabilities[categoryId] = (category == null)
+                    ? Double.NEGATIVE_INFINITY
+                    : Math.log(this.calculator.featureProbability(feature, category));
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package cn.hutao.bayes;
+
+/**
+ * An immutable naive Bayes model for inference only, created by
+ * {@link Classifier#freezeFloat()}, that stores the log likelihoods of the
+ * features in single precision.  It takes half the memory of a
+ * {@link FrozenBayesModel}; the log likelihoods are rounded to about seven
+ * significant digits but still summed up in double precision, so the scores
+ * drift from those of the double model by far less than the typical margin
+ * between categories.  See {@link ModelDriftReport} to measure it.  Like the
+ * double model it keeps the log likelihoods of the scoring mode and the
+ * calculator the classifier had when it was frozen.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public final class FloatBayesModel<F, C> extends AbstractBayesModel<F, C> {
+
+    /**
+     * The log likelihoods of the features, feature-major: the entry of
+     * feature id f and category index c is at {@code f * categories + c}.
+     */
+    private final float[] logLikelihoods;
+
+    /**
+     * The rounded log likelihood of a feature not seen in a category, per
+     * category.
+     */
+    private final float[] unseen;
+
+    /**
+     * Freezes the current knowledge of a classifier.
+     *
+     * @param classifier The classifier.
+     */
+    FloatBayesModel(Classifier<F, C> classifier) {
+        super(classifier);
+        int numCategories = this.categories.length;
+        int numFeatures = this.features.size();
+        this.unseen = new float[numCategories];
+        for (int c = 0; c < numCategories; c++) {
+            this.unseen[c] = (float) this.unseenLogLikelihoods[c];
+        }
+        this.logLikelihoods = new float[numFeatures * numCategories];
+        int[] counts = new int[classifier.getCategoryDictionary().size()];
+        double[] logLikelihoods = new double[counts.length];
+        double[] row = new double[numCategories];
+        for (int featureId = 0; featureId < numFeatures; featureId++) {
+            this.featureLogLikelihoods(classifier, featureId, counts, logLikelihoods, row);
+            int offset = featureId * numCategories;
+            for (int c = 0; c < numCategories; c++) {
+                this.logLikelihoods[offset + c] = (float) row[c];
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLikelihoodBytes() {
+        return 4L * this.logLikelihoods.length;
+    }
+
+    /**
+     * Sums up the log likelihoods of the features in double precision for
+     * every category and adds the log priors.
+     *
+     * @param featureIds The ids of the features.
+     * @param scores Receives the scores, indexed by category index.
+     */
+    @Override
+    void scores(int[] featureIds, double[] scores) {
+        int numCategories = this.categories.length;
+        double[] logSums = new double[numCategories];
+        for (int c = 0; c < numCategories; c++) {
+            logSums[c] = 1.0f;
+        }
+        for (int featureId : featureIds) {
+            if (!this.isKnown(featureId)) {
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += this.unseen[c];
+                }
+            } else {
+                int offset = featureId * numCategories;
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += this.logLikelihoods[offset + c];
+                }
+            }
+        }
+        for (int c = 0; c < numCategories; c++) {
+            scores[c] = this.logPriors[c] + logSums[c];
+        }
+    }
+
+}
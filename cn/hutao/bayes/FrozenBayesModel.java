@@ -0,0 +1,84 @@
+package cn.hutao.bayes;
+
+/**
+ * An immutable naive Bayes model for inference only, created by
+ * {@link Classifier#freeze()}.  All log probabilities are computed once when
+ * the model is frozen: the log prior of every category, the log likelihood of
+ * every known feature in every category and, per category, the log likelihood
+ * of a feature never seen in it.  Classifying is then a matter of table
+ * lookups and additions and gives the same scores as {@link BayesClassifier}
+ * at the time of freezing, in its {@link ScoringMode} and with its custom
+ * feature probability calculator if one is set.  The model is never modified
+ * after construction, so it can be shared across threads without locking.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public final class FrozenBayesModel<F, C> extends AbstractBayesModel<F, C> {
+
+    /**
+     * The log likelihoods of the features, feature-major: the entry of
+     * feature id f and category index c is at {@code f * categories + c}.
+     */
+    private final double[] logLikelihoods;
+
+    /**
+     * Freezes the current knowledge of a classifier.
+     *
+     * @param classifier The classifier.
+     */
+    FrozenBayesModel(Classifier<F, C> classifier) {
+        super(classifier);
+        int numCategories = this.categories.length;
+        int numFeatures = this.features.size();
+        this.logLikelihoods = new double[numFeatures * numCategories];
+        int[] counts = new int[classifier.getCategoryDictionary().size()];
+        double[] logLikelihoods = new double[counts.length];
+        double[] row = new double[numCategories];
+        for (int featureId = 0; featureId < numFeatures; featureId++) {
+            this.featureLogLikelihoods(classifier, featureId, counts, logLikelihoods, row);
+            System.arraycopy(row, 0, this.logLikelihoods, featureId * numCategories,
+                    numCategories);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLikelihoodBytes() {
+        return 8L * this.logLikelihoods.length;
+    }
+
+    /**
+     * Sums up the log likelihoods of the features for every category and
+     * adds the log priors.
+     *
+     * @param featureIds The ids of the features.
+     * @param scores Receives the scores, indexed by category index.
+     */
+    @Override
+    void scores(int[] featureIds, double[] scores) {
+        int numCategories = this.categories.length;
+        double[] logSums = new double[numCategories];
+        for (int c = 0; c < numCategories; c++) {
+            logSums[c] = 1.0f;
+        }
+        for (int featureId : featureIds) {
+            if (!this.isKnown(featureId)) {
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += this.unseenLogLikelihoods[c];
+                }
+            } else {
+                int offset = featureId * numCategories;
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += this.logLikelihoods[offset + c];
+                }
+            }
+        }
+        for (int c = 0; c < numCategories; c++) {
+            scores[c] = this.logPriors[c] + logSums[c];
+        }
+    }
+
+}
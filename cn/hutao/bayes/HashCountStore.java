@@ -0,0 +1,65 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+
+/**
+ * The default count store.  The feature counts of every category live in a
+ * sparse open-addressing table keyed by feature id, so memory grows with the
+ * number of (feature, category) pairs actually seen.  Updating a count neither
+ * boxes nor allocates entry objects.
+ */
+public class HashCountStore extends AbstractCountStore {
+
+    /**
+     * The feature counts of each category, indexed by category id.
+     */
+    private IntIntHashMap[] featureCountPerCategory;
+
+    /**
+     * Constructs a new, empty store.
+     */
+    public HashCountStore() {
+        this.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void addFeatureCount(int featureId, int categoryId, int delta) {
+        if (categoryId >= this.featureCountPerCategory.length) {
+            this.featureCountPerCategory = Arrays.copyOf(this.featureCountPerCategory,
+                    Math.max(categoryId + 1, this.featureCountPerCategory.length << 1));
+        }
+        IntIntHashMap features = this.featureCountPerCategory[categoryId];
+        if (features == null) {
+            features = new IntIntHashMap(AbstractCountStore.INITIAL_FEATURE_CAPACITY);
+            this.featureCountPerCategory[categoryId] = features;
+        }
+        if (features.add(featureId, delta) == 0 && features.size() == 0) {
+            this.featureCountPerCategory[categoryId] = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int featureCount(int featureId, int categoryId) {
+        if (categoryId >= this.featureCountPerCategory.length) {
+            return 0;
+        }
+        IntIntHashMap features = this.featureCountPerCategory[categoryId];
+        return (features == null) ? 0 : features.get(featureId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void clearFeatureCounts() {
+        this.featureCountPerCategory =
+                new IntIntHashMap[AbstractCountStore.INITIAL_CATEGORY_CAPACITY];
+    }
+
+}
@@ -0,0 +1,350 @@
+package cn.hutao.bayes;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Bayes classifier using the hashing trick: instead of interning features,
+ * every feature is projected through a seeded 64-bit hash into one of 2^k
+ * buckets, and the bucket number serves as its feature id.  No feature
+ * objects are stored at all, so memory is fixed by the number of buckets and
+ * categories, and learn and classify only touch a preallocated feature-major
+ * count matrix.
+ * <p>
+ * Features that share a bucket are counted as one.  The vocabulary size used
+ * for smoothing is the number of occupied buckets, and
+ * {@link #estimatedCollisionRate()} reports how many of the distinct features
+ * seen are estimated to have landed in an already occupied bucket.
+ * <p>
+ * The count matrix is a single array of {@code 2^bits} rows with one slot
+ * per category, so the classifier can learn at most
+ * {@code (2^31 - 9) / 2^bits} categories; learning more throws an
+ * {@link IllegalStateException} without changing any count.
+ * <p>
+ * A custom {@link #setFeatureProbability calculator} is handed the features
+ * being classified, so it can only be used when classifying features; with
+ * a calculator set, classifying bare ids and freezing throw an
+ * {@link IllegalStateException}, since a bucket stands for no single
+ * feature.  Snapshots classify features, so they support it.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class HashedBayesClassifier<F, C> extends BayesClassifier<F, C> {
+
+    /**
+     * The default hash seed.
+     */
+    private static final long DEFAULT_SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * The default number of categories the count matrix is sized for.
+     */
+    private static final int DEFAULT_EXPECTED_CATEGORIES = 2;
+
+    /**
+     * The log2 of the number of buckets.
+     */
+    private final int bits;
+
+    /**
+     * The hash seed.
+     */
+    private final long seed;
+
+    /**
+     * Constructs a new classifier with 2^bits buckets and the default seed.
+     *
+     * @param bits The log2 of the number of buckets, between 1 and 29.
+     */
+    public HashedBayesClassifier(int bits) {
+        this(bits, HashedBayesClassifier.DEFAULT_SEED,
+                HashedBayesClassifier.DEFAULT_EXPECTED_CATEGORIES);
+    }
+
+    /**
+     * Constructs a new classifier with 2^bits buckets.
+     *
+     * @param bits The log2 of the number of buckets, between 1 and 29.
+     * @param seed The hash seed.
+     * @param expectedCategories The number of categories to preallocate the
+     *    count matrix for; {@code 2^bits * expectedCategories} must not
+     *    exceed {@code 2^31 - 9}.
+     */
+    public HashedBayesClassifier(int bits, long seed, int expectedCategories) {
+        super(new DenseCountStore(expectedCategories,
+                1 << HashedBayesClassifier.checkBits(bits, expectedCategories)));
+        this.bits = bits;
+        this.seed = seed;
+    }
+
+    /**
+     * Retrieves the number of buckets.
+     *
+     * @return The number of buckets.
+     */
+    public int getBucketCount() {
+        return 1 << this.bits;
+    }
+
+    /**
+     * Retrieves the bucket a feature is hashed to.
+     *
+     * @param feature The feature.
+     * @return The bucket, which is also the feature id.
+     */
+    public int bucket(F feature) {
+        return HashedBayesClassifier.bucket(feature, this.seed, this.bits);
+    }
+
+    /**
+     * Hashes a feature to a bucket.
+     *
+     * @param feature The feature.
+     * @param seed The hash seed.
+     * @param bits The log2 of the number of buckets.
+     * @return The bucket.
+     */
+    private static int bucket(Object feature, long seed, int bits) {
+        long h;
+        if (feature instanceof CharSequence) {
+            CharSequence chars = (CharSequence) feature;
+            h = seed ^ chars.length();
+            for (int i = 0; i < chars.length(); i++) {
+                h = (h ^ chars.charAt(i)) * 0x100000001B3L;
+            }
+        } else {
+            h = seed ^ feature.hashCode();
+        }
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (h >>> (64 - bits));
+    }
+
+    /**
+     * Estimates the number of distinct features currently counted from the
+     * number of occupied buckets, by linear counting.
+     *
+     * @return The estimated number of distinct features.
+     */
+    public double estimatedDistinctFeatures() {
+        double buckets = this.getBucketCount();
+        int occupied = this.getVocabularySize();
+        if (occupied >= buckets) {
+            return buckets * Math.log(buckets);
+        }
+        return -buckets * Math.log(1 - occupied / buckets);
+    }
+
+    /**
+     * Estimates the share of distinct features that were hashed into a bucket
+     * already occupied by another feature.
+     *
+     * @return The estimated collision rate between 0 and 1.
+     */
+    public double estimatedCollisionRate() {
+        double distinct = this.estimatedDistinctFeatures();
+        return (distinct <= 0) ? 0 : 1 - this.getVocabularySize() / distinct;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int featureId(F feature) {
+        return (feature == null) ? FeatureDictionary.UNKNOWN : this.bucket(feature);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int internFeature(F feature) {
+        return this.bucket(feature);
+    }
+
+    /**
+     * Retrieves the number of buckets, every bucket being a valid feature
+     * id.
+     *
+     * @return The number of buckets.
+     */
+    @Override
+    protected int featureIdLimit() {
+        return 1 << this.bits;
+    }
+
+    /**
+     * Retrieves a dictionary resolving features by hashing, for a frozen
+     * model.
+     *
+     * @return The hashing dictionary.
+     */
+    @Override
+    protected FeatureDictionary<F> copyFeatureDictionary() {
+        return new HashingDictionary<F>(this.seed, this.bits);
+    }
+
+    /**
+     * Returns an empty set: the classifier stores no feature objects, only
+     * the counts of the buckets they were hashed to.  See
+     * {@link #getBuckets()} for the buckets in use.
+     *
+     * @return The empty set.
+     */
+    @Override
+    public Set<F> getFeatures() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Returns a live, read-only view of the buckets with a positive count,
+     * the feature ids the classifier knows about.
+     *
+     * @return The set of occupied buckets, in ascending order.
+     */
+    public Set<Integer> getBuckets() {
+        return new AbstractSet<Integer>() {
+
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+
+                    private int next = this.advance(0);
+
+                    private int advance(int from) {
+                        int buckets = HashedBayesClassifier.this.getBucketCount();
+                        while (from < buckets
+                                && HashedBayesClassifier.this.totalFeatureCount(from) == 0) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < HashedBayesClassifier.this.getBucketCount();
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int toReturn = this.next;
+                        this.next = this.advance(this.next + 1);
+                        return toReturn;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Integer)) {
+                    return false;
+                }
+                int bucket = (Integer) o;
+                return bucket >= 0 && bucket < HashedBayesClassifier.this.getBucketCount()
+                        && HashedBayesClassifier.this.totalFeatureCount(bucket) > 0;
+            }
+
+            @Override
+            public int size() {
+                return HashedBayesClassifier.this.getVocabularySize();
+            }
+        };
+    }
+
+    /**
+     * Refuses to resolve a bucket for the calculator, since no single
+     * feature stands behind it.
+     *
+     * @param featureId The bucket.
+     * @return Never.
+     * @throws IllegalStateException Always.
+     */
+    @Override
+    F calculatorFeature(int featureId) {
+        throw new IllegalStateException("A hashed classifier can only hand a calculator "
+                + "the features it classifies, not bare buckets");
+    }
+
+    /**
+     * Checks the number of hash bits, and that the count matrix for the
+     * expected number of categories fits into an array.
+     *
+     * @param bits The log2 of the number of buckets.
+     * @param expectedCategories The expected number of categories.
+     * @return The bits.
+     */
+    private static int checkBits(int bits, int expectedCategories) {
+        if (bits < 1 || bits > 29) {
+            throw new IllegalArgumentException("bits must be between 1 and 29: " + bits);
+        }
+        if (expectedCategories < 1
+                || (long) expectedCategories << bits > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cannot hold " + expectedCategories
+                    + " categories in " + (1 << bits) + " buckets: at most "
+                    + (Integer.MAX_VALUE - 8) / (1 << bits) + " fit");
+        }
+        return bits;
+    }
+
+    /**
+     * A read-only dictionary resolving features to their buckets, holding
+     * nothing but the hash parameters.
+     *
+     * @param <F> The feature class.
+     */
+    private static final class HashingDictionary<F> extends FeatureDictionary<F> {
+
+        private final long seed;
+
+        private final int bits;
+
+        HashingDictionary(long seed, int bits) {
+            super(0);
+            this.seed = seed;
+            this.bits = bits;
+        }
+
+        @Override
+        public int id(F feature) {
+            return (feature == null)
+                    ? FeatureDictionary.UNKNOWN
+                    : HashedBayesClassifier.bucket(feature, this.seed, this.bits);
+        }
+
+        @Override
+        public int intern(F feature) {
+            throw new UnsupportedOperationException(
+                    "A frozen dictionary cannot intern features");
+        }
+
+        @Override
+        public F feature(int id) {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return 1 << this.bits;
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException(
+                    "A frozen dictionary cannot be cleared");
+        }
+    }
+
+}
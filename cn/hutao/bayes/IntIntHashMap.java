@@ -0,0 +1,191 @@
+package cn.hutao.bayes;
+
+/**
+ * An open-addressing hash map from non-negative int keys to int counts.  Keys
+ * and values live in two parallel arrays and collisions are resolved by linear
+ * probing.  A count of zero is treated as absent: adding to a key until it
+ * reaches zero removes the key again.
+ */
+final class IntIntHashMap {
+
+    /**
+     * The smallest table capacity used.
+     */
+    private static final int MINIMUM_CAPACITY = 8;
+
+    /**
+     * The keys plus one, indexed by slot.  Zero marks a free slot.
+     */
+    private int[] keys;
+
+    /**
+     * The values, indexed by slot.
+     */
+    private int[] values;
+
+    /**
+     * The number of keys stored.
+     */
+    private int size;
+
+    /**
+     * The number of keys at which the table is grown.
+     */
+    private int threshold;
+
+    /**
+     * Constructs a new map able to hold the given number of keys without
+     * growing.
+     *
+     * @param expectedSize The expected number of keys.
+     */
+    IntIntHashMap(int expectedSize) {
+        int capacity = IntIntHashMap.MINIMUM_CAPACITY;
+        while (capacity - (capacity >> 2) < expectedSize) {
+            capacity <<= 1;
+        }
+        this.allocate(capacity);
+    }
+
+    /**
+     * Retrieves the value of the given key.
+     *
+     * @param key The key to look up.
+     * @return The value, or zero if the key is absent.
+     */
+    int get(int key) {
+        int stored = key + 1;
+        int mask = this.keys.length - 1;
+        int slot = IntIntHashMap.hash(stored) & mask;
+        int current;
+        while ((current = this.keys[slot]) != 0) {
+            if (current == stored) {
+                return this.values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the given delta to the value of a key.  Absent keys start at zero;
+     * keys whose value drops to zero or below are removed.
+     *
+     * @param key The key to update.
+     * @param delta The amount to add.
+     * @return The new value, or zero if the key was removed.
+     */
+    int add(int key, int delta) {
+        int stored = key + 1;
+        int mask = this.keys.length - 1;
+        int slot = IntIntHashMap.hash(stored) & mask;
+        int current;
+        while ((current = this.keys[slot]) != 0) {
+            if (current == stored) {
+                int value = this.values[slot] + delta;
+                if (value <= 0) {
+                    this.removeAt(slot);
+                    return 0;
+                }
+                this.values[slot] = value;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (delta <= 0) {
+            return 0;
+        }
+        this.keys[slot] = stored;
+        this.values[slot] = delta;
+        if (++this.size > this.threshold) {
+            this.rehash(this.keys.length << 1);
+        }
+        return delta;
+    }
+
+    /**
+     * Retrieves the number of keys stored.
+     *
+     * @return The number of keys.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes the key in the given slot, shifting back any following keys of
+     * the same probe run so that lookups never need tombstones.
+     *
+     * @param slot The slot to free.
+     */
+    private void removeAt(int slot) {
+        int mask = this.keys.length - 1;
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int key = this.keys[next];
+            if (key == 0) {
+                break;
+            }
+            int ideal = IntIntHashMap.hash(key) & mask;
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = key;
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+        }
+        this.keys[gap] = 0;
+        this.values[gap] = 0;
+        this.size--;
+    }
+
+    /**
+     * Moves all keys into a table of the given capacity.
+     *
+     * @param capacity The new capacity, a power of two.
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        int oldSize = this.size;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int slot = IntIntHashMap.hash(key) & mask;
+                while (this.keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+        this.size = oldSize;
+    }
+
+    /**
+     * Replaces the table by an empty one of the given capacity.
+     *
+     * @param capacity The capacity, a power of two.
+     */
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.size = 0;
+        this.threshold = (capacity >> 1) + (capacity >> 2);
+    }
+
+    /**
+     * Spreads a key over all bits.
+     *
+     * @param key The key.
+     * @return The spread hash.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,174 @@
+package cn.hutao.bayes;
+
+import java.util.Collection;
+
+/**
+ * How far the scores of a reduced precision model drift from those of a
+ * reference model frozen from the same classifier, usually the double
+ * precision {@link FrozenBayesModel}, measured on a set of documents.  It
+ * reports how often both models pick the same category, the mean and the
+ * largest absolute score difference over all categories of all documents,
+ * and the memory the likelihood tables of the two models take.
+ */
+public final class ModelDriftReport {
+
+    /**
+     * The number of documents compared.
+     */
+    private final int documents;
+
+    /**
+     * The number of documents both models put into the same category.
+     */
+    private final int agreements;
+
+    /**
+     * The mean absolute score difference per category and document.
+     */
+    private final double meanScoreError;
+
+    /**
+     * The largest absolute score difference.
+     */
+    private final double maxScoreError;
+
+    /**
+     * The size of the reference model's likelihood table.
+     */
+    private final long referenceBytes;
+
+    /**
+     * The size of the candidate model's likelihood table.
+     */
+    private final long candidateBytes;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param documents The number of documents compared.
+     * @param agreements The number of documents classified alike.
+     * @param meanScoreError The mean absolute score difference.
+     * @param maxScoreError The largest absolute score difference.
+     * @param referenceBytes The size of the reference model's table.
+     * @param candidateBytes The size of the candidate model's table.
+     */
+    private ModelDriftReport(int documents, int agreements, double meanScoreError,
+                             double maxScoreError, long referenceBytes, long candidateBytes) {
+        this.documents = documents;
+        this.agreements = agreements;
+        this.meanScoreError = meanScoreError;
+        this.maxScoreError = maxScoreError;
+        this.referenceBytes = referenceBytes;
+        this.candidateBytes = candidateBytes;
+    }
+
+    /**
+     * Compares two models frozen from the same classifier on a set of
+     * documents.
+     *
+     * @param reference The reference model.
+     * @param candidate The model to measure the drift of.
+     * @param documents The documents to classify with both models.
+     * @return The report.
+     */
+    public static <F, C> ModelDriftReport measure(AbstractBayesModel<F, C> reference,
+                                                  AbstractBayesModel<F, C> candidate,
+                                                  Collection<? extends Collection<F>> documents) {
+        int numCategories = reference.getCategoryCount();
+        if (candidate.getCategoryCount() != numCategories) {
+            throw new IllegalArgumentException("Models have different categories: "
+                    + numCategories + " and " + candidate.getCategoryCount());
+        }
+        double[] expected = new double[numCategories];
+        double[] actual = new double[numCategories];
+        int agreements = 0;
+        double sumError = 0;
+        double maxError = 0;
+        for (Collection<F> document : documents) {
+            reference.scores(reference.featureIds(document), expected);
+            candidate.scores(candidate.featureIds(document), actual);
+            int expectedBest = -1;
+            int actualBest = -1;
+            for (int c = 0; c < numCategories; c++) {
+                if (expectedBest < 0 || expected[c] > expected[expectedBest]) {
+                    expectedBest = c;
+                }
+                if (actualBest < 0 || actual[c] > actual[actualBest]) {
+                    actualBest = c;
+                }
+                double error = Math.abs(actual[c] - expected[c]);
+                sumError += error;
+                maxError = Math.max(maxError, error);
+            }
+            if (expectedBest == actualBest) {
+                agreements++;
+            }
+        }
+        long scores = (long) documents.size() * numCategories;
+        return new ModelDriftReport(documents.size(), agreements,
+                (scores == 0) ? 0 : sumError / scores, maxError,
+                reference.getLikelihoodBytes(), candidate.getLikelihoodBytes());
+    }
+
+    /**
+     * Retrieves the number of documents compared.
+     *
+     * @return The number of documents.
+     */
+    public int getDocuments() {
+        return this.documents;
+    }
+
+    /**
+     * Retrieves the share of documents both models put into the same
+     * category.
+     *
+     * @return The agreement rate between 0 and 1.
+     */
+    public double getAgreement() {
+        return (this.documents == 0) ? 1 : (double) this.agreements / this.documents;
+    }
+
+    /**
+     * Retrieves the mean absolute difference of the log scores, over all
+     * categories of all documents.
+     *
+     * @return The mean score error.
+     */
+    public double getMeanScoreError() {
+        return this.meanScoreError;
+    }
+
+    /**
+     * Retrieves the largest absolute difference of the log scores.
+     *
+     * @return The largest score error.
+     */
+    public double getMaxScoreError() {
+        return this.maxScoreError;
+    }
+
+    /**
+     * Retrieves how many times smaller the candidate's likelihood table is
+     * than the reference's.
+     *
+     * @return The compression ratio.
+     */
+    public double getCompression() {
+        return (this.candidateBytes == 0) ? 1 : (double) this.referenceBytes / this.candidateBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ModelDriftReport [documents=" + this.documents
+                + ", agreement=" + this.getAgreement()
+                + ", meanScoreError=" + this.meanScoreError
+                + ", maxScoreError=" + this.maxScoreError
+                + ", referenceBytes=" + this.referenceBytes
+                + ", candidateBytes=" + this.candidateBytes + "]";
+    }
+
+}
@@ -0,0 +1,182 @@
+package cn.hutao.bayes;
+
+/**
+ * An open-addressing hash map from objects to primitive int values.  Keys and
+ * values live in two parallel arrays and collisions are resolved by linear
+ * probing, so no entry objects are allocated and no value is ever boxed.
+ * Keys are never removed, only the whole map can be cleared.
+ *
+ * @param <K> The key class.
+ */
+final class ObjectIntHashMap<K> {
+
+    /**
+     * The smallest table capacity used.
+     */
+    private static final int MINIMUM_CAPACITY = 8;
+
+    /**
+     * The keys, indexed by slot.  A null key marks a free slot.
+     */
+    private Object[] keys;
+
+    /**
+     * The values, indexed by slot.
+     */
+    private int[] values;
+
+    /**
+     * The number of keys stored.
+     */
+    private int size;
+
+    /**
+     * The number of keys at which the table is grown.
+     */
+    private int threshold;
+
+    /**
+     * Constructs a new map able to hold the given number of keys without
+     * growing.
+     *
+     * @param expectedSize The expected number of keys.
+     */
+    ObjectIntHashMap(int expectedSize) {
+        this.allocate(ObjectIntHashMap.capacityFor(expectedSize));
+    }
+
+    /**
+     * Constructs a new map holding the same keys and values as the given one.
+     *
+     * @param other The map to copy.
+     */
+    ObjectIntHashMap(ObjectIntHashMap<K> other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+        this.threshold = other.threshold;
+    }
+
+    /**
+     * Retrieves the value of the given key.
+     *
+     * @param key The key to look up.
+     * @param absent The value to return if the key is absent.
+     * @return The value, or the given default if the key is absent.
+     */
+    int get(Object key, int absent) {
+        int mask = this.keys.length - 1;
+        int slot = ObjectIntHashMap.hash(key) & mask;
+        Object current;
+        while ((current = this.keys[slot]) != null) {
+            if (current.equals(key)) {
+                return this.values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return absent;
+    }
+
+    /**
+     * Associates the given value with a key, replacing any previous value.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    void put(K key, int value) {
+        int mask = this.keys.length - 1;
+        int slot = ObjectIntHashMap.hash(key) & mask;
+        Object current;
+        while ((current = this.keys[slot]) != null) {
+            if (current.equals(key)) {
+                this.values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.threshold) {
+            this.rehash(this.keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes all keys.
+     */
+    void clear() {
+        this.allocate(ObjectIntHashMap.MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Retrieves the number of keys stored.
+     *
+     * @return The number of keys.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Moves all keys into a table of the given capacity.
+     *
+     * @param capacity The new capacity, a power of two.
+     */
+    private void rehash(int capacity) {
+        Object[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        int oldSize = this.size;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object key = oldKeys[i];
+            if (key != null) {
+                int slot = ObjectIntHashMap.hash(key) & mask;
+                while (this.keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+        this.size = oldSize;
+    }
+
+    /**
+     * Replaces the table by an empty one of the given capacity.
+     *
+     * @param capacity The capacity, a power of two.
+     */
+    private void allocate(int capacity) {
+        this.keys = new Object[capacity];
+        this.values = new int[capacity];
+        this.size = 0;
+        this.threshold = (capacity >> 1) + (capacity >> 2);
+    }
+
+    /**
+     * Retrieves the table capacity needed for the given number of keys.
+     *
+     * @param expectedSize The expected number of keys.
+     * @return A power of two.
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = ObjectIntHashMap.MINIMUM_CAPACITY;
+        while (capacity - (capacity >> 2) < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the hash code of a key over all bits.
+     *
+     * @param key The key.
+     * @return The spread hash.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,323 @@
+package cn.hutao.bayes;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * A count store keeping the per-feature counts outside the Java heap, for
+ * vocabularies too large to be scanned by every full garbage collection.
+ * Each category's counts and the feature totals are paged arrays of direct
+ * memory indexed by feature id; only the per-category totals, one int each,
+ * stay on the heap.  The feature dictionary of the classifier still holds
+ * the feature objects themselves.
+ * <p>
+ * The native memory is released by {@link #close()}.  A closed store rejects
+ * every further call; {@link #clear()} frees the memory as well but leaves
+ * the store usable.  Freeing goes through {@code sun.misc.Unsafe} by
+ * reflection and falls back to the garbage collector where that is not
+ * available.  The direct memory is capped by {@code -XX:MaxDirectMemorySize};
+ * exceeding it throws an {@link OutOfMemoryError} about direct buffer
+ * memory.
+ */
+public class OffHeapCountStore implements CountStore, Closeable {
+
+    /**
+     * Initial capacity of category arrays.
+     */
+    private static final int INITIAL_CATEGORY_CAPACITY = 8;
+
+    /**
+     * The feature counts of each category, indexed by category id.
+     */
+    private OffHeapIntArray[] featureCountPerCategory;
+
+    /**
+     * The feature counts over all categories, indexed by feature id.
+     */
+    private OffHeapIntArray totalFeatureCount;
+
+    /**
+     * The number of features with a positive total count.
+     */
+    private int distinctFeatureCount;
+
+    /**
+     * The category counts, indexed by category id.
+     */
+    private int[] totalCategoryCount;
+
+    /**
+     * The sum of all feature counts of each category, indexed by category id.
+     */
+    private int[] categoryFeatureCount;
+
+    /**
+     * The sum of all category counts.
+     */
+    private int categoriesTotal;
+
+    /**
+     * Whether the native memory was released for good.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new, empty store.
+     */
+    public OffHeapCountStore() {
+        this.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId) {
+        this.incrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementFeature(int featureId, int categoryId, int n) {
+        this.ensureOpen();
+        if (n <= 0) {
+            return;
+        }
+        this.ensureCategory(categoryId);
+        OffHeapIntArray features = this.featureCountPerCategory[categoryId];
+        if (features == null) {
+            features = new OffHeapIntArray();
+            this.featureCountPerCategory[categoryId] = features;
+        }
+        features.add(featureId, n);
+        this.categoryFeatureCount[categoryId] += n;
+        if (this.totalFeatureCount.add(featureId, n) == n) {
+            this.distinctFeatureCount++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId) {
+        this.decrementFeature(featureId, categoryId, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementFeature(int featureId, int categoryId, int n) {
+        int removed = Math.min(n, this.featureCount(featureId, categoryId));
+        if (removed <= 0) {
+            return;
+        }
+        this.featureCountPerCategory[categoryId].add(featureId, -removed);
+        this.categoryFeatureCount[categoryId] -= removed;
+        if (this.totalFeatureCount.add(featureId, -removed) == 0) {
+            this.distinctFeatureCount--;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId) {
+        this.ensureOpen();
+        this.ensureCategory(categoryId);
+        this.totalCategoryCount[categoryId]++;
+        this.categoriesTotal++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementCategory(int categoryId, int n) {
+        this.ensureOpen();
+        if (n <= 0) {
+            return;
+        }
+        this.ensureCategory(categoryId);
+        this.totalCategoryCount[categoryId] += n;
+        this.categoriesTotal += n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementCategory(int categoryId) {
+        if (this.categoryCount(categoryId) > 0) {
+            this.totalCategoryCount[categoryId]--;
+            this.categoriesTotal--;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int featureCount(int featureId, int categoryId) {
+        this.ensureOpen();
+        if (categoryId >= this.featureCountPerCategory.length) {
+            return 0;
+        }
+        OffHeapIntArray features = this.featureCountPerCategory[categoryId];
+        return (features == null) ? 0 : features.get(featureId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void featureCounts(int featureId, int[] counts) {
+        for (int categoryId = 0; categoryId < counts.length; categoryId++) {
+            counts[categoryId] = this.featureCount(featureId, categoryId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int totalFeatureCount(int featureId) {
+        this.ensureOpen();
+        return this.totalFeatureCount.get(featureId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryFeatureCount(int categoryId) {
+        this.ensureOpen();
+        return (categoryId < this.categoryFeatureCount.length)
+                ? this.categoryFeatureCount[categoryId] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int categoryCount(int categoryId) {
+        this.ensureOpen();
+        return (categoryId < this.totalCategoryCount.length)
+                ? this.totalCategoryCount[categoryId] : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCategoriesTotal() {
+        this.ensureOpen();
+        return this.categoriesTotal;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int distinctFeatureCount() {
+        this.ensureOpen();
+        return this.distinctFeatureCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    /**
+     * Retrieves the number of bytes of native memory the store holds.
+     *
+     * @return The off-heap size.
+     */
+    public long offHeapBytes() {
+        this.ensureOpen();
+        long toReturn = this.totalFeatureCount.allocatedBytes();
+        for (OffHeapIntArray features : this.featureCountPerCategory) {
+            if (features != null) {
+                toReturn += features.allocatedBytes();
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.ensureOpen();
+        this.free();
+        this.featureCountPerCategory =
+                new OffHeapIntArray[OffHeapCountStore.INITIAL_CATEGORY_CAPACITY];
+        this.totalFeatureCount = new OffHeapIntArray();
+        this.distinctFeatureCount = 0;
+        this.totalCategoryCount = new int[OffHeapCountStore.INITIAL_CATEGORY_CAPACITY];
+        this.categoryFeatureCount = new int[OffHeapCountStore.INITIAL_CATEGORY_CAPACITY];
+        this.categoriesTotal = 0;
+    }
+
+    /**
+     * Releases all native memory.  The store cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.free();
+            this.closed = true;
+        }
+    }
+
+    /**
+     * Releases the native memory of all arrays.
+     */
+    private void free() {
+        if (this.featureCountPerCategory != null) {
+            for (OffHeapIntArray features : this.featureCountPerCategory) {
+                if (features != null) {
+                    features.close();
+                }
+            }
+        }
+        if (this.totalFeatureCount != null) {
+            this.totalFeatureCount.close();
+        }
+    }
+
+    /**
+     * Grows the category arrays to hold the given category id.
+     *
+     * @param categoryId The category id.
+     */
+    private void ensureCategory(int categoryId) {
+        if (categoryId >= this.totalCategoryCount.length) {
+            int capacity = Math.max(categoryId + 1, this.totalCategoryCount.length << 1);
+            this.featureCountPerCategory =
+                    Arrays.copyOf(this.featureCountPerCategory, capacity);
+            this.totalCategoryCount = Arrays.copyOf(this.totalCategoryCount, capacity);
+            this.categoryFeatureCount =
+                    Arrays.copyOf(this.categoryFeatureCount, capacity);
+        }
+    }
+
+    /**
+     * Fails if the store was closed.
+     */
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Count store is closed");
+        }
+    }
+
+}
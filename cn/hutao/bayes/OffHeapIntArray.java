@@ -0,0 +1,184 @@
+package cn.hutao.bayes;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A growable array of int counters kept outside the Java heap.  The array is
+ * split into fixed-size pages of direct memory that are allocated on first
+ * write, so untouched ranges cost nothing.  {@link #close()} releases the
+ * native memory immediately instead of waiting for the garbage collector.
+ * <p>
+ * Java has no public API to free a direct buffer, so the pages are freed
+ * through {@code sun.misc.Unsafe.invokeCleaner}, looked up by reflection.
+ * The JDK 9 and later offer it in the {@code jdk.unsupported} module; if the
+ * lookup or a call fails, for example on an older JVM or under a security
+ * manager, freeing is left to the garbage collector, which releases a
+ * page's memory once the page is collected, and no further call is tried.
+ * <p>
+ * Direct memory is limited separately from the heap, by
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ * Allocating a page beyond the limit throws an {@link OutOfMemoryError}
+ * about direct buffer memory ("Direct buffer memory" up to JDK 11, "Cannot
+ * reserve ... bytes of direct buffer memory" after it), once the JVM tried
+ * to free unreachable buffers with a garbage collection; size the limit for
+ * the number of features times categories the store is expected to hold.
+ */
+final class OffHeapIntArray implements Closeable {
+
+    /**
+     * The log2 of the number of ints per page.
+     */
+    private static final int PAGE_SHIFT = 16;
+
+    /**
+     * The number of ints per page.
+     */
+    private static final int PAGE_SIZE = 1 << OffHeapIntArray.PAGE_SHIFT;
+
+    /**
+     * The mask selecting the index within a page.
+     */
+    private static final int PAGE_MASK = OffHeapIntArray.PAGE_SIZE - 1;
+
+    /**
+     * The method freeing a direct buffer right away, or null if the running
+     * JVM does not offer one.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    /**
+     * Whether buffers are freed through {@link #INVOKE_CLEANER}; cleared when
+     * a call fails, leaving every later buffer to the garbage collector.
+     */
+    private static volatile boolean freeing;
+
+    /**
+     * The receiver of {@link #INVOKE_CLEANER}.
+     */
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            invokeCleaner = null;
+            unsafe = null;
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+        OffHeapIntArray.freeing = invokeCleaner != null;
+    }
+
+    /**
+     * The pages, null where nothing was written yet.
+     */
+    private ByteBuffer[] pages = new ByteBuffer[8];
+
+    /**
+     * The number of bytes of native memory held.
+     */
+    private long allocatedBytes;
+
+    /**
+     * Retrieves the value at the given index.
+     *
+     * @param index The index.
+     * @return The value, zero if never written.
+     */
+    int get(long index) {
+        int page = (int) (index >>> OffHeapIntArray.PAGE_SHIFT);
+        if (page >= this.pages.length || this.pages[page] == null) {
+            return 0;
+        }
+        return this.pages[page].getInt(((int) index & OffHeapIntArray.PAGE_MASK) << 2);
+    }
+
+    /**
+     * Adds the given delta to the value at an index.
+     *
+     * @param index The index.
+     * @param delta The amount to add.
+     * @return The new value.
+     */
+    int add(long index, int delta) {
+        ByteBuffer page = this.page((int) (index >>> OffHeapIntArray.PAGE_SHIFT));
+        int offset = ((int) index & OffHeapIntArray.PAGE_MASK) << 2;
+        int value = page.getInt(offset) + delta;
+        page.putInt(offset, value);
+        return value;
+    }
+
+    /**
+     * Retrieves the number of bytes of native memory held.
+     *
+     * @return The allocated size.
+     */
+    long allocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Frees all pages.  The array reads as empty afterwards and can be
+     * written to again.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < this.pages.length; i++) {
+            if (this.pages[i] != null) {
+                OffHeapIntArray.free(this.pages[i]);
+                this.pages[i] = null;
+            }
+        }
+        this.allocatedBytes = 0;
+    }
+
+    /**
+     * Retrieves a page, allocating it if needed.
+     *
+     * @param page The page number.
+     * @return The page.
+     */
+    private ByteBuffer page(int page) {
+        if (page >= this.pages.length) {
+            this.pages = Arrays.copyOf(this.pages,
+                    Math.max(page + 1, this.pages.length << 1));
+        }
+        ByteBuffer toReturn = this.pages[page];
+        if (toReturn == null) {
+            toReturn = ByteBuffer.allocateDirect(OffHeapIntArray.PAGE_SIZE << 2)
+                    .order(ByteOrder.nativeOrder());
+            this.pages[page] = toReturn;
+            this.allocatedBytes += OffHeapIntArray.PAGE_SIZE << 2;
+        }
+        return toReturn;
+    }
+
+    /**
+     * Releases the native memory of a direct buffer.  Where the JVM does not
+     * allow this, the memory is released once the buffer, which the caller
+     * drops, is collected.
+     *
+     * @param buffer The buffer to free.
+     */
+    private static void free(ByteBuffer buffer) {
+        if (OffHeapIntArray.freeing) {
+            try {
+                OffHeapIntArray.INVOKE_CLEANER.invoke(OffHeapIntArray.UNSAFE, buffer);
+            } catch (Exception e) {
+                OffHeapIntArray.freeing = false;
+            }
+        }
+    }
+
+}
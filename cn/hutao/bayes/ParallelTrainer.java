@@ -0,0 +1,275 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Trains a classifier from a large number of examples on all cores.  The
+ * examples are split across a {@link ForkJoinPool} through their
+ * {@link Spliterator}; each leaf task counts its part into a shard confined
+ * to its thread, with its own dictionaries and a plain
+ * {@link HashCountStore} and no synchronization at all.  Shards are merged
+ * pairwise as the tasks join, a tree reduction in which no merge waits for
+ * more than two shards, and the final shard is added to the classifier in
+ * one pass.
+ * <p>
+ * The result is the same as learning every example with an unbounded
+ * memory: the trained examples do not enter the classifier's memory and are
+ * never forgotten.  The classifier must not be used by other threads while
+ * it is trained.
+ * <p>
+ * The counts are ints, as in every {@link CountStore}, so a category can
+ * hold at most {@code 2^31 - 1} feature occurrences, and the classifier at
+ * most {@code 2^31 - 1} examples.  The shards check their totals as they
+ * count and merge, and all totals are checked before the result is added
+ * to the classifier, so training past the limit throws an
+ * {@link IllegalStateException} and leaves the classifier unchanged instead
+ * of wrapping the counts around.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class ParallelTrainer<F, C> {
+
+    /**
+     * The number of leaf tasks per worker thread the examples are split
+     * into, so that workers finishing early can steal work.
+     */
+    private static final int LEAVES_PER_THREAD = 4;
+
+    /**
+     * The pool the tasks run on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new trainer running on the common pool.
+     */
+    public ParallelTrainer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new trainer running on the given pool.
+     *
+     * @param pool The pool.
+     */
+    public ParallelTrainer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Trains a classifier with the given examples.
+     *
+     * @param examples The examples.
+     * @param classifier The classifier to train.
+     * @return The number of examples, shards and the time of each phase.
+     */
+    public TrainingReport train(Spliterator<? extends Classification<F, C>> examples,
+                                Classifier<F, C> classifier) {
+        long size = examples.estimateSize();
+        long leafSize = (size == Long.MAX_VALUE) ? 1024
+                : Math.max(1, size / ((long) this.pool.getParallelism()
+                        * ParallelTrainer.LEAVES_PER_THREAD));
+        Statistics statistics = new Statistics();
+
+        long start = System.nanoTime();
+        Shard<F, C> merged = this.pool.invoke(
+                new TrainTask<F, C>(examples, leafSize, statistics));
+        long trained = System.nanoTime();
+        merged.addTo(classifier);
+        long applied = System.nanoTime();
+
+        return new TrainingReport(merged.examples, statistics.shards.get(),
+                trained - start, statistics.trainNanos.sum(), statistics.mergeNanos.sum(),
+                applied - trained);
+    }
+
+    /**
+     * Adds two non-negative counts, checking that the sum still fits into
+     * an int.
+     *
+     * @param count The count.
+     * @param n The count to add.
+     * @param what What is counted, for the message.
+     * @return The sum.
+     * @throws IllegalStateException If the sum exceeds
+     *    {@link Integer#MAX_VALUE}.
+     */
+    private static int checkedSum(int count, int n, String what) {
+        long sum = (long) count + n;
+        if (sum > Integer.MAX_VALUE) {
+            throw new IllegalStateException(what + " exceeds " + Integer.MAX_VALUE);
+        }
+        return (int) sum;
+    }
+
+    /**
+     * The counters the tasks of one training run report to.
+     */
+    private static final class Statistics {
+
+        private final AtomicInteger shards = new AtomicInteger();
+
+        private final LongAdder trainNanos = new LongAdder();
+
+        private final LongAdder mergeNanos = new LongAdder();
+    }
+
+    /**
+     * Splits its examples until they are small enough, trains a shard from
+     * them and merges the shards of its subtasks.
+     */
+    private static final class TrainTask<F, C> extends RecursiveTask<Shard<F, C>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<? extends Classification<F, C>> examples;
+
+        private final long leafSize;
+
+        private final Statistics statistics;
+
+        TrainTask(Spliterator<? extends Classification<F, C>> examples, long leafSize,
+                  Statistics statistics) {
+            this.examples = examples;
+            this.leafSize = leafSize;
+            this.statistics = statistics;
+        }
+
+        @Override
+        protected Shard<F, C> compute() {
+            Spliterator<? extends Classification<F, C>> split = null;
+            if (this.examples.estimateSize() > this.leafSize) {
+                split = this.examples.trySplit();
+            }
+            if (split == null) {
+                long start = System.nanoTime();
+                Shard<F, C> shard = new Shard<F, C>();
+                while (this.examples.tryAdvance(shard)) {
+                    continue;
+                }
+                this.statistics.trainNanos.add(System.nanoTime() - start);
+                this.statistics.shards.incrementAndGet();
+                return shard;
+            }
+            TrainTask<F, C> left = new TrainTask<F, C>(split, this.leafSize, this.statistics);
+            left.fork();
+            Shard<F, C> right = new TrainTask<F, C>(this.examples, this.leafSize,
+                    this.statistics).compute();
+            Shard<F, C> merged = left.join();
+            long start = System.nanoTime();
+            merged.merge(right);
+            this.statistics.mergeNanos.add(System.nanoTime() - start);
+            return merged;
+        }
+    }
+
+    /**
+     * The counts of part of the examples, used by one thread at a time.
+     */
+    private static final class Shard<F, C> implements Consumer<Classification<F, C>> {
+
+        private final FeatureDictionary<F> features = new FeatureDictionary<F>();
+
+        private final FeatureDictionary<C> categories = new FeatureDictionary<C>();
+
+        private final CountStore counts = new HashCountStore();
+
+        private int[] categoryCounts = new int[AbstractCountStore.INITIAL_CATEGORY_CAPACITY];
+
+        private long examples;
+
+        @Override
+        public void accept(Classification<F, C> example) {
+            int categoryId = this.categories.intern(example.getCategory());
+            for (F feature : example.getFeatureset()) {
+                this.counts.incrementFeature(this.features.intern(feature), categoryId);
+            }
+            if (this.counts.categoryFeatureCount(categoryId) < 0) {
+                throw new IllegalStateException("The feature count of category "
+                        + example.getCategory() + " exceeds " + Integer.MAX_VALUE);
+            }
+            this.addExamples(categoryId, 1);
+        }
+
+        private void addExamples(int categoryId, int n) {
+            if (categoryId >= this.categoryCounts.length) {
+                this.categoryCounts = Arrays.copyOf(this.categoryCounts,
+                        Math.max(categoryId + 1, this.categoryCounts.length << 1));
+            }
+            this.categoryCounts[categoryId] = ParallelTrainer.checkedSum(
+                    this.categoryCounts[categoryId], n, "The example count of category "
+                            + this.categories.feature(categoryId));
+            this.examples += n;
+        }
+
+        /**
+         * Adds the counts of another shard to this one.
+         *
+         * @param other The shard to add.
+         */
+        void merge(Shard<F, C> other) {
+            int numCategories = other.categories.size();
+            int[] categoryIds = new int[numCategories];
+            for (int c = 0; c < numCategories; c++) {
+                categoryIds[c] = this.categories.intern(other.categories.feature(c));
+                ParallelTrainer.checkedSum(this.counts.categoryFeatureCount(categoryIds[c]),
+                        other.counts.categoryFeatureCount(c), "The feature count of category "
+                                + other.categories.feature(c));
+                this.addExamples(categoryIds[c], other.categoryCounts[c]);
+            }
+            int[] row = new int[numCategories];
+            for (int featureId = 0; featureId < other.features.size(); featureId++) {
+                other.counts.featureCounts(featureId, row);
+                int mergedId = this.features.intern(other.features.feature(featureId));
+                for (int c = 0; c < numCategories; c++) {
+                    if (row[c] > 0) {
+                        this.counts.incrementFeature(mergedId, categoryIds[c], row[c]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the counts of this shard to a classifier, after checking that
+         * none of its totals overflows.
+         *
+         * @param classifier The classifier.
+         */
+        void addTo(Classifier<F, C> classifier) {
+            int numCategories = this.categories.size();
+            ParallelTrainer.checkedSum(classifier.getCategoriesTotal(),
+                    (int) Math.min(Integer.MAX_VALUE, this.examples), "The number of examples");
+            for (int c = 0; c < numCategories; c++) {
+                C category = this.categories.feature(c);
+                ParallelTrainer.checkedSum(classifier.categoryCount(category),
+                        this.categoryCounts[c], "The example count of category " + category);
+                ParallelTrainer.checkedSum(classifier.categoryFeatureCount(category),
+                        this.counts.categoryFeatureCount(c),
+                        "The feature count of category " + category);
+            }
+            for (int c = 0; c < numCategories; c++) {
+                if (this.categoryCounts[c] > 0) {
+                    classifier.incrementCategory(this.categories.feature(c), this.categoryCounts[c]);
+                }
+            }
+            int[] row = new int[numCategories];
+            for (int featureId = 0; featureId < this.features.size(); featureId++) {
+                this.counts.featureCounts(featureId, row);
+                F feature = this.features.feature(featureId);
+                for (int c = 0; c < numCategories; c++) {
+                    if (row[c] > 0) {
+                        classifier.incrementFeature(feature, this.categories.feature(c), row[c]);
+                    }
+                }
+            }
+        }
+    }
+
+}
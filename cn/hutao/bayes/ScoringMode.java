@@ -0,0 +1,30 @@
+package cn.hutao.bayes;
+
+/**
+ * How {@link BayesClassifier} computes the smoothed log likelihood
+ * log((count + lambda) / denominator) of a feature in a category.
+ */
+public enum ScoringMode {
+
+    /**
+     * The log of the smoothed ratio, one division and one logarithm per
+     * feature and category.  The default.
+     */
+    RATIO,
+
+    /**
+     * log(count + lambda) - log(denominator), the log of the denominator
+     * cached per category and the other logarithm computed every time.  The
+     * reference the lookup table mode reproduces.
+     */
+    LOG_DIFFERENCE,
+
+    /**
+     * Like {@link #LOG_DIFFERENCE}, but log(count + lambda) is read from a
+     * precomputed table for counts below the table size, so the common small
+     * counts cost an array read instead of a logarithm.  Gives bit for bit
+     * the same results as {@link #LOG_DIFFERENCE}.
+     */
+    LOG_TABLE
+
+}
@@ -0,0 +1,237 @@
+package cn.hutao.bayes;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Serves classify calls from a published, immutable snapshot of a
+ * {@link BayesClassifier} while learn calls keep training it.  Learning goes
+ * to the wrapped classifier under a writer lock; classifying reads the
+ * current {@link SnapshotBayesModel} through a single volatile reference and
+ * never locks, so it never waits for a learn call and never sees one half
+ * applied.  Each snapshot is an epoch: the counts of the classifier after a
+ * whole number of learn calls.
+ * <p>
+ * A new snapshot is published when the number of learn calls since the last
+ * one reaches the publish threshold, or on the first learn call after the
+ * publish interval has passed, or when {@link #publish()} is called.
+ * The classifier logs the features whose counts change, and publishing
+ * copies only those into a snapshot sharing everything else with the
+ * previous one, so its cost grows with the number of features learned or
+ * forgotten since the last snapshot rather than with the size of the model;
+ * the threshold and interval trade that cost against classifying with
+ * slightly older counts.  With no learn calls arriving, nothing is published
+ * until {@link #publish()} is called.
+ * <p>
+ * The snapshots score in the wrapped classifier's {@link ScoringMode} and
+ * with its custom feature probability calculator, which must be set before
+ * wrapping it and is then called by the classifying threads.  A
+ * {@link HashedBayesClassifier} logs its changed buckets like any other
+ * classifier, so its snapshots are published incrementally too.
+ * <p>
+ * The wrapped classifier must not be used directly once wrapped, and must
+ * not be a {@link ConcurrentBayesClassifier}, which does not log its
+ * changes.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public class SnapshotBayesClassifier<F, C> {
+
+    /**
+     * The classifier learn calls train.  Guarded by the writer lock.
+     */
+    private final BayesClassifier<F, C> writer;
+
+    /**
+     * The writer lock.
+     */
+    private final Object writerLock = new Object();
+
+    /**
+     * The number of learn calls after which a snapshot is published.
+     */
+    private final int publishThreshold;
+
+    /**
+     * The time in nanoseconds after which a learn call publishes a snapshot,
+     * or zero to publish by count only.
+     */
+    private final long publishIntervalNanos;
+
+    /**
+     * The features changed by the learn calls not yet visible to classify.
+     * Guarded by the writer lock.
+     */
+    private final FeatureChangeLog changes = new FeatureChangeLog();
+
+    /**
+     * The number of learn calls not yet visible to classify.  Guarded by
+     * the writer lock.
+     */
+    private int pending;
+
+    /**
+     * The time the current snapshot was published at.  Guarded by the
+     * writer lock.
+     */
+    private long publishedAt;
+
+    /**
+     * The snapshot classify reads.
+     */
+    private volatile SnapshotBayesModel<F, C> snapshot;
+
+    /**
+     * Wraps a classifier and publishes its current knowledge as the first
+     * snapshot.
+     *
+     * @param writer The classifier to train.
+     * @param publishThreshold The number of learn calls after which a
+     *    snapshot is published, positive.
+     * @param publishIntervalMillis The time in milliseconds after which a
+     *    learn call publishes a snapshot, or zero to publish by count only.
+     */
+    public SnapshotBayesClassifier(BayesClassifier<F, C> writer, int publishThreshold,
+                                   long publishIntervalMillis) {
+        if (publishThreshold < 1) {
+            throw new IllegalArgumentException("publishThreshold must be positive: "
+                    + publishThreshold);
+        }
+        if (publishIntervalMillis < 0) {
+            throw new IllegalArgumentException("publishIntervalMillis must not be negative: "
+                    + publishIntervalMillis);
+        }
+        if (writer instanceof ConcurrentBayesClassifier) {
+            throw new IllegalArgumentException(
+                    "A concurrent classifier does not log its changes");
+        }
+        this.writer = writer;
+        this.publishThreshold = publishThreshold;
+        this.publishIntervalNanos = publishIntervalMillis * 1000000L;
+        synchronized (this.writerLock) {
+            writer.setFeatureChangeLog(this.changes);
+            this.snapshot = SnapshotBayesModel.of(writer, 0);
+            this.publishedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Train the classifier.
+     *
+     * @param category The category the features belong to.
+     * @param features The features that resulted in the given category.
+     */
+    public void learn(C category, Collection<F> features) {
+        synchronized (this.writerLock) {
+            this.writer.learn(category, features);
+            this.learned();
+        }
+    }
+
+    /**
+     * Train the classifier.
+     *
+     * @param classification The classification to learn.
+     */
+    public void learn(Classification<F, C> classification) {
+        synchronized (this.writerLock) {
+            this.writer.learn(classification);
+            this.learned();
+        }
+    }
+
+    /**
+     * Train the classifier with term frequencies.
+     *
+     * @param category The category the features belong to.
+     * @param featureCounts The number of occurrences of each feature, all
+     *    positive.
+     * @see Classifier#learn(Object, Map)
+     */
+    public void learn(C category, Map<F, Integer> featureCounts) {
+        synchronized (this.writerLock) {
+            this.writer.learn(category, featureCounts);
+            this.learned();
+        }
+    }
+
+    /**
+     * Publishes the current knowledge as a new snapshot, if anything was
+     * learned since the last one.
+     */
+    public void publish() {
+        synchronized (this.writerLock) {
+            if (this.pending > 0) {
+                this.publishLocked();
+            }
+        }
+    }
+
+    /**
+     * Classifies the given set of features with the current snapshot,
+     * without locking.
+     *
+     * @param features The features to classify.
+     * @return The category most likely, or null if the snapshot knows no
+     *    category.
+     */
+    public Classification<F, C> classify(Collection<F> features) {
+        return this.snapshot.classify(features);
+    }
+
+    /**
+     * Retrieves the current snapshot, for classifying several documents
+     * against the same epoch.
+     *
+     * @return The snapshot.
+     */
+    public SnapshotBayesModel<F, C> getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Retrieves the epoch of the current snapshot, the number of snapshots
+     * published after the first one.
+     *
+     * @return The epoch.
+     */
+    public long getEpoch() {
+        return this.snapshot.getEpoch();
+    }
+
+    /**
+     * Retrieves the number of learn calls not yet visible to classify.
+     *
+     * @return The number of pending learn calls.
+     */
+    public int getPendingLearns() {
+        synchronized (this.writerLock) {
+            return this.pending;
+        }
+    }
+
+    /**
+     * Counts a learn call and publishes if the threshold or the interval
+     * was reached.  Must be called holding the writer lock.
+     */
+    private void learned() {
+        this.pending++;
+        if (this.pending >= this.publishThreshold || (this.publishIntervalNanos > 0
+                && System.nanoTime() - this.publishedAt >= this.publishIntervalNanos)) {
+            this.publishLocked();
+        }
+    }
+
+    /**
+     * Publishes a snapshot with the changed features copied.  Must be called
+     * holding the writer lock.
+     */
+    private void publishLocked() {
+        this.snapshot = this.snapshot.next(this.writer, this.changes);
+        this.changes.clear();
+        this.pending = 0;
+        this.publishedAt = System.nanoTime();
+    }
+
+}
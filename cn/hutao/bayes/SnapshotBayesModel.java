@@ -0,0 +1,395 @@
+package cn.hutao.bayes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable snapshot of the counts of a {@link Classifier}, published by
+ * {@link SnapshotBayesClassifier}.  Unlike a {@link FrozenBayesModel} it
+ * keeps counts rather than log likelihoods, in pages of per-feature rows
+ * that consecutive snapshots share: the next snapshot copies only the pages
+ * holding features whose counts changed, the rows of those features and the
+ * per-category values, so publishing costs time in proportion to what
+ * changed since the last snapshot rather than to the size of the model.
+ * The log likelihoods are computed when classifying, in the
+ * {@link ScoringMode} of the classifier or from its custom calculator as they
+ * were when the snapshot was published, which gives the same scores as a
+ * {@link FrozenBayesModel} frozen at the same moment.  The calculator is
+ * called by the classifying threads, so it must be safe to call
+ * concurrently.
+ * <p>
+ * Features are resolved through a copy of the classifier's dictionary taken
+ * when the first snapshot was built, plus a map of the features interned
+ * after it that the snapshots share and only ever add to; a snapshot
+ * ignores ids assigned after it was published.  A hashed classifier has no
+ * dictionary to copy; its snapshots resolve features by hashing, with every
+ * bucket a known id.
+ *
+ * @param <F> The feature class.
+ * @param <C> The category class.
+ */
+public final class SnapshotBayesModel<F, C> {
+
+    /**
+     * The number of feature rows per page.
+     */
+    private static final int PAGE_SIZE = 1024;
+
+    /**
+     * The number of snapshots published before this one.
+     */
+    private final long epoch;
+
+    /**
+     * The copy of the classifier's dictionary the first snapshot was built
+     * with.  Never modified.
+     */
+    private final FeatureDictionary<F> baseFeatures;
+
+    /**
+     * The ids of the features interned after the base dictionary was
+     * copied, shared by all later snapshots.
+     */
+    private final ConcurrentHashMap<F, Integer> addedFeatures;
+
+    /**
+     * The number of feature ids the snapshot knows about.
+     */
+    private final int featureLimit;
+
+    /**
+     * The feature counts per category id, in pages of {@link #PAGE_SIZE}
+     * rows indexed by feature id; null for features without counts.  A row
+     * shorter than a category id holds no count for that category.
+     */
+    private final int[][][] pages;
+
+    /**
+     * The categories with a positive count, in category id order.
+     */
+    private final Object[] categories;
+
+    /**
+     * The category id of each category index.
+     */
+    private final int[] categoryIds;
+
+    /**
+     * The log prior of each category.
+     */
+    private final double[] logPriors;
+
+    /**
+     * The smoothing denominator of each category.
+     */
+    private final double[] denominators;
+
+    /**
+     * The log of the smoothing denominator of each category.
+     */
+    private final double[] logDenominators;
+
+    /**
+     * How the log likelihoods are computed from the counts.
+     */
+    private final ScoringMode scoringMode;
+
+    /**
+     * The log table of {@link ScoringMode#LOG_TABLE}, shared with the
+     * classifier, which never modifies it.
+     */
+    private final double[] logTable;
+
+    /**
+     * The custom calculator of feature log probabilities, or null to use the
+     * counts.
+     */
+    private final BulkFeatureProbability<F, C> featureProbability;
+
+    /**
+     * The number of category ids, the length of the rows a calculator
+     * fills.
+     */
+    private final int categoryIdLimit;
+
+    /**
+     * The log likelihood of a feature not seen in a category, per category.
+     */
+    private final double[] unseenLogLikelihoods;
+
+    /**
+     * Snapshots the categories of a classifier around the given feature
+     * counts.
+     *
+     * @param classifier The classifier.
+     * @param epoch The epoch.
+     * @param baseFeatures The base dictionary.
+     * @param addedFeatures The features interned after the base.
+     * @param featureLimit The number of known feature ids.
+     * @param pages The feature counts.
+     */
+    private SnapshotBayesModel(BayesClassifier<F, C> classifier, long epoch,
+                               FeatureDictionary<F> baseFeatures,
+                               ConcurrentHashMap<F, Integer> addedFeatures, int featureLimit,
+                               int[][][] pages) {
+        this.epoch = epoch;
+        this.baseFeatures = baseFeatures;
+        this.addedFeatures = addedFeatures;
+        this.featureLimit = featureLimit;
+        this.pages = pages;
+        this.scoringMode = classifier.getScoringMode();
+        this.logTable = classifier.getLogTable();
+        this.featureProbability = classifier.scoringCalculator();
+
+        FeatureDictionary<C> categoryDictionary = classifier.getCategoryDictionary();
+        this.categoryIdLimit = categoryDictionary.size();
+        int[] ids = new int[categoryDictionary.size()];
+        int numCategories = 0;
+        for (int categoryId = 0; categoryId < categoryDictionary.size(); categoryId++) {
+            if (classifier.categoryCount(categoryId) > 0) {
+                ids[numCategories++] = categoryId;
+            }
+        }
+        this.categories = new Object[numCategories];
+        this.categoryIds = Arrays.copyOf(ids, numCategories);
+        this.logPriors = new double[numCategories];
+        this.denominators = new double[numCategories];
+        this.logDenominators = new double[numCategories];
+        this.unseenLogLikelihoods = new double[numCategories];
+        int vocabularySize = classifier.getVocabularySize();
+        double logCategoriesTotal = Math.log(classifier.getCategoriesTotal());
+        for (int c = 0; c < numCategories; c++) {
+            this.categories[c] = categoryDictionary.feature(ids[c]);
+            this.logPriors[c] = Math.log(classifier.categoryCount(ids[c]))
+                    - logCategoriesTotal;
+            this.denominators[c] = (double) classifier.categoryFeatureCount(ids[c])
+                    + vocabularySize * Classifier.DEFAULT_LAMBDA;
+            this.logDenominators[c] = Math.log(this.denominators[c]);
+            this.unseenLogLikelihoods[c] = Math.log(
+                    (0 + Classifier.DEFAULT_LAMBDA) / this.denominators[c]);
+        }
+    }
+
+    /**
+     * Builds a snapshot of everything a classifier knows, copying its
+     * dictionary and the counts of every feature.
+     *
+     * @param classifier The classifier.
+     * @param epoch The epoch of the snapshot.
+     * @return The snapshot.
+     */
+    static <F, C> SnapshotBayesModel<F, C> of(BayesClassifier<F, C> classifier, long epoch) {
+        FeatureDictionary<F> baseFeatures = classifier.copyFeatureDictionary();
+        int featureLimit = classifier.featureIdLimit();
+        int[][][] pages = new int[SnapshotBayesModel.pageCount(featureLimit)][][];
+        int rowLength = classifier.getCategoryDictionary().size();
+        for (int featureId = 0; featureId < featureLimit; featureId++) {
+            if (classifier.totalFeatureCount(featureId) > 0) {
+                int page = featureId / SnapshotBayesModel.PAGE_SIZE;
+                if (pages[page] == null) {
+                    pages[page] = new int[SnapshotBayesModel.PAGE_SIZE][];
+                }
+                int[] row = new int[rowLength];
+                classifier.featureCounts(featureId, row);
+                pages[page][featureId % SnapshotBayesModel.PAGE_SIZE] = row;
+            }
+        }
+        return new SnapshotBayesModel<F, C>(classifier, epoch, baseFeatures,
+                new ConcurrentHashMap<F, Integer>(), featureLimit, pages);
+    }
+
+    /**
+     * Builds the snapshot following this one, copying only the features in
+     * the change log, which is left as it is.  If the classifier's feature
+     * ids shrank, it was reset and everything is copied again.
+     *
+     * @param classifier The classifier this snapshot was taken of.
+     * @param changes The features whose counts changed since this snapshot.
+     * @return The next snapshot.
+     */
+    SnapshotBayesModel<F, C> next(BayesClassifier<F, C> classifier, FeatureChangeLog changes) {
+        FeatureDictionary<F> dictionary = classifier.getFeatureDictionary();
+        int featureLimit = classifier.featureIdLimit();
+        if (featureLimit < this.featureLimit) {
+            return SnapshotBayesModel.of(classifier, this.epoch + 1);
+        }
+        for (int featureId = this.featureLimit; featureId < featureLimit; featureId++) {
+            F feature = dictionary.feature(featureId);
+            if (feature != null) {
+                this.addedFeatures.put(feature, featureId);
+            }
+        }
+
+        int[][][] pages = Arrays.copyOf(this.pages, SnapshotBayesModel.pageCount(featureLimit));
+        boolean[] copied = new boolean[pages.length];
+        int rowLength = classifier.getCategoryDictionary().size();
+        for (int i = 0; i < changes.size(); i++) {
+            int featureId = changes.get(i);
+            if (featureId >= featureLimit) {
+                continue;
+            }
+            int page = featureId / SnapshotBayesModel.PAGE_SIZE;
+            if (!copied[page]) {
+                pages[page] = (pages[page] == null)
+                        ? new int[SnapshotBayesModel.PAGE_SIZE][] : pages[page].clone();
+                copied[page] = true;
+            }
+            int[] row = null;
+            if (classifier.totalFeatureCount(featureId) > 0) {
+                row = new int[rowLength];
+                classifier.featureCounts(featureId, row);
+            }
+            pages[page][featureId % SnapshotBayesModel.PAGE_SIZE] = row;
+        }
+        return new SnapshotBayesModel<F, C>(classifier, this.epoch + 1, this.baseFeatures,
+                this.addedFeatures, featureLimit, pages);
+    }
+
+    /**
+     * Calculates the number of pages needed for the given number of
+     * features.
+     *
+     * @param numFeatures The number of features.
+     * @return The number of pages.
+     */
+    private static int pageCount(int numFeatures) {
+        return (numFeatures + SnapshotBayesModel.PAGE_SIZE - 1) / SnapshotBayesModel.PAGE_SIZE;
+    }
+
+    /**
+     * Retrieves the epoch of the snapshot, the number of snapshots published
+     * before it.
+     *
+     * @return The epoch.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Retrieves the number of categories the snapshot can classify as.
+     *
+     * @return The number of categories.
+     */
+    public int getCategoryCount() {
+        return this.categories.length;
+    }
+
+    /**
+     * Retrieves a category by its index in the snapshot.
+     *
+     * @param index The category index.
+     * @return The category.
+     */
+    @SuppressWarnings("unchecked")
+    public C getCategory(int index) {
+        return (C) this.categories[index];
+    }
+
+    /**
+     * Classifies the given set of features.
+     *
+     * @param features The features to classify.
+     * @return The category most likely, or null if the snapshot knows no
+     *    category.
+     */
+    public Classification<F, C> classify(Collection<F> features) {
+        int numCategories = this.categories.length;
+        double[] logSums = new double[numCategories];
+        for (int c = 0; c < numCategories; c++) {
+            logSums[c] = 1.0f;
+        }
+        double[] likelihoods = null;
+        for (F feature : features) {
+            int[] row = this.row(this.featureId(feature));
+            if (row == null) {
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += this.unseenLogLikelihoods[c];
+                }
+            } else if (this.featureProbability != null) {
+                if (likelihoods == null) {
+                    likelihoods = new double[this.categoryIdLimit];
+                }
+                this.featureProbability.featureLogProbabilities(feature, likelihoods);
+                for (int c = 0; c < numCategories; c++) {
+                    logSums[c] += likelihoods[this.categoryIds[c]];
+                }
+            } else {
+                for (int c = 0; c < numCategories; c++) {
+                    int categoryId = this.categoryIds[c];
+                    int count = (categoryId < row.length) ? row[categoryId] : 0;
+                    logSums[c] += this.logLikelihood(count, c);
+                }
+            }
+        }
+        int best = -1;
+        double bestScore = 0;
+        for (int c = 0; c < numCategories; c++) {
+            double score = this.logPriors[c] + logSums[c];
+            if (best < 0 || score > bestScore) {
+                best = c;
+                bestScore = score;
+            }
+        }
+        return (best < 0) ? null
+                : new Classification<F, C>(features, this.getCategory(best), bestScore);
+    }
+
+    /**
+     * Calculates the smoothed log likelihood of a count in the scoring mode,
+     * the same way {@link BayesClassifier} does.
+     *
+     * @param count The count of the feature in the category.
+     * @param c The category index.
+     * @return The log likelihood.
+     */
+    private double logLikelihood(int count, int c) {
+        switch (this.scoringMode) {
+        case LOG_TABLE:
+            return ((count < this.logTable.length) ? this.logTable[count]
+                    : Math.log((double) count + Classifier.DEFAULT_LAMBDA))
+                    - this.logDenominators[c];
+        case LOG_DIFFERENCE:
+            return Math.log((double) count + Classifier.DEFAULT_LAMBDA)
+                    - this.logDenominators[c];
+        default:
+            return Math.log(((double) count + Classifier.DEFAULT_LAMBDA)
+                    / this.denominators[c]);
+        }
+    }
+
+    /**
+     * Resolves a feature to the id it had when the snapshot was published.
+     *
+     * @param feature The feature.
+     * @return The id, or {@link FeatureDictionary#UNKNOWN}.
+     */
+    private int featureId(F feature) {
+        if (feature == null) {
+            return FeatureDictionary.UNKNOWN;
+        }
+        int featureId = this.baseFeatures.id(feature);
+        if (featureId == FeatureDictionary.UNKNOWN) {
+            Integer added = this.addedFeatures.get(feature);
+            featureId = (added == null) ? FeatureDictionary.UNKNOWN : added;
+        }
+        return (featureId < this.featureLimit) ? featureId : FeatureDictionary.UNKNOWN;
+    }
+
+    /**
+     * Retrieves the counts of a feature.
+     *
+     * @param featureId The feature id.
+     * @return The counts per category id, or null for features without
+     *    counts.
+     */
+    private int[] row(int featureId) {
+        if (featureId < 0) {
+            return null;
+        }
+        int[][] page = this.pages[featureId / SnapshotBayesModel.PAGE_SIZE];
+        return (page == null) ? null : page[featureId % SnapshotBayesModel.PAGE_SIZE];
+    }
+
+}
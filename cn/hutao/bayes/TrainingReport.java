@@ -0,0 +1,137 @@
+package cn.hutao.bayes;
+
+/**
+ * What a run of {@link ParallelTrainer} did and how long each phase took.
+ * The parallel phase covers splitting the examples, training the shards and
+ * merging them, and its wall time is reported along with the time spent in
+ * training and in merging summed over all threads; the apply phase adds the
+ * merged counts to the classifier on the calling thread.
+ */
+public final class TrainingReport {
+
+    /**
+     * The number of examples trained.
+     */
+    private final long examples;
+
+    /**
+     * The number of shards the examples were split into.
+     */
+    private final int shards;
+
+    /**
+     * The wall time of the parallel phase.
+     */
+    private final long parallelNanos;
+
+    /**
+     * The time spent training shards, summed over all threads.
+     */
+    private final long trainNanos;
+
+    /**
+     * The time spent merging shards, summed over all threads.
+     */
+    private final long mergeNanos;
+
+    /**
+     * The wall time of adding the merged counts to the classifier.
+     */
+    private final long applyNanos;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param examples The number of examples trained.
+     * @param shards The number of shards.
+     * @param parallelNanos The wall time of the parallel phase.
+     * @param trainNanos The summed time of training shards.
+     * @param mergeNanos The summed time of merging shards.
+     * @param applyNanos The wall time of the apply phase.
+     */
+    TrainingReport(long examples, int shards, long parallelNanos, long trainNanos,
+                   long mergeNanos, long applyNanos) {
+        this.examples = examples;
+        this.shards = shards;
+        this.parallelNanos = parallelNanos;
+        this.trainNanos = trainNanos;
+        this.mergeNanos = mergeNanos;
+        this.applyNanos = applyNanos;
+    }
+
+    /**
+     * Retrieves the number of examples trained.
+     *
+     * @return The number of examples.
+     */
+    public long getExamples() {
+        return this.examples;
+    }
+
+    /**
+     * Retrieves the number of shards the examples were split into.
+     *
+     * @return The number of shards.
+     */
+    public int getShards() {
+        return this.shards;
+    }
+
+    /**
+     * Retrieves the wall time of splitting, training and merging.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getParallelNanos() {
+        return this.parallelNanos;
+    }
+
+    /**
+     * Retrieves the time spent training shards, summed over all threads.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTrainNanos() {
+        return this.trainNanos;
+    }
+
+    /**
+     * Retrieves the time spent merging shards, summed over all threads.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getMergeNanos() {
+        return this.mergeNanos;
+    }
+
+    /**
+     * Retrieves the wall time of adding the merged counts to the classifier.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getApplyNanos() {
+        return this.applyNanos;
+    }
+
+    /**
+     * Retrieves the total wall time of the run.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return this.parallelNanos + this.applyNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "TrainingReport [examples=" + this.examples + ", shards=" + this.shards
+                + ", parallelMillis=" + this.parallelNanos / 1000000
+                + ", trainMillis=" + this.trainNanos / 1000000
+                + ", mergeMillis=" + this.mergeNanos / 1000000
+                + ", applyMillis=" + this.applyNanos / 1000000 + "]";
+    }
+
+}
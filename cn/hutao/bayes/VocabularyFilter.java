@@ -0,0 +1,270 @@
+package cn.hutao.bayes;
+
+/**
+ * A counting Bloom filter over the features a classifier currently knows,
+ * those with a positive total count.  It answers "definitely unseen" for
+ * most features that never occurred in training without probing the
+ * feature dictionary, and never answers so for a known feature.  Each of the
+ * k counters of a feature is one byte; a counter that reaches its maximum
+ * sticks there, so removals never create false negatives.  When more
+ * features are known than the filter was sized for, the classifier rebuilds
+ * it at twice the size.
+ * <p>
+ * The filter also counts how lookups went, so the share of features it
+ * answered without a dictionary probe can be monitored.  The counters are
+ * plain fields; under concurrent classification they are approximate.
+ */
+public final class VocabularyFilter {
+
+    /**
+     * The number of counters per feature.
+     */
+    private static final int HASHES = 5;
+
+    /**
+     * The number of counters per expected feature, which gives a false
+     * positive rate of about 1% at full capacity.
+     */
+    private static final int COUNTERS_PER_FEATURE = 10;
+
+    /**
+     * The value at which a counter sticks.
+     */
+    private static final int MAX_COUNTER = 0xFF;
+
+    /**
+     * The counters, unsigned bytes.  The length is a power of two.
+     */
+    private final byte[] counters;
+
+    /**
+     * The number of features the filter was sized for.
+     */
+    private final int capacity;
+
+    /**
+     * The number of features currently added.
+     */
+    private int size;
+
+    /**
+     * The number of lookups.
+     */
+    private long lookups;
+
+    /**
+     * The number of lookups answered as definitely unseen.
+     */
+    private long rejections;
+
+    /**
+     * The number of lookups that passed the filter for a feature that turned
+     * out to be unknown.
+     */
+    private long falsePositives;
+
+    /**
+     * Constructs a new, empty filter.
+     *
+     * @param capacity The number of features to size the filter for.
+     */
+    VocabularyFilter(int capacity) {
+        this.capacity = Math.max(capacity, 64);
+        int length = Integer.highestOneBit(
+                this.capacity * VocabularyFilter.COUNTERS_PER_FEATURE - 1) << 1;
+        this.counters = new byte[length];
+    }
+
+    /**
+     * Adds a feature that became known.
+     *
+     * @param feature The feature.
+     */
+    void add(Object feature) {
+        int h = VocabularyFilter.hash(feature);
+        int step = VocabularyFilter.step(h);
+        for (int i = 0; i < VocabularyFilter.HASHES; i++) {
+            int index = this.index(h + i * step);
+            int counter = this.counters[index] & 0xFF;
+            if (counter < VocabularyFilter.MAX_COUNTER) {
+                this.counters[index] = (byte) (counter + 1);
+            }
+        }
+        this.size++;
+    }
+
+    /**
+     * Removes a feature that is no longer known.
+     *
+     * @param feature The feature, which must have been added.
+     */
+    void remove(Object feature) {
+        int h = VocabularyFilter.hash(feature);
+        int step = VocabularyFilter.step(h);
+        for (int i = 0; i < VocabularyFilter.HASHES; i++) {
+            int index = this.index(h + i * step);
+            int counter = this.counters[index] & 0xFF;
+            if (counter > 0 && counter < VocabularyFilter.MAX_COUNTER) {
+                this.counters[index] = (byte) (counter - 1);
+            }
+        }
+        this.size--;
+    }
+
+    /**
+     * Checks whether a feature may be known, counting the lookup.
+     *
+     * @param feature The feature.
+     * @return False if the feature is definitely unknown.
+     */
+    boolean mightContain(Object feature) {
+        this.lookups++;
+        int h = VocabularyFilter.hash(feature);
+        int step = VocabularyFilter.step(h);
+        for (int i = 0; i < VocabularyFilter.HASHES; i++) {
+            if (this.counters[this.index(h + i * step)] == 0) {
+                this.rejections++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that a feature which passed the filter was unknown after all.
+     */
+    void falsePositive() {
+        this.falsePositives++;
+    }
+
+    /**
+     * Checks whether more features were added than the filter was sized for.
+     *
+     * @return Whether the filter should be rebuilt larger.
+     */
+    boolean isFull() {
+        return this.size > this.capacity;
+    }
+
+    /**
+     * Retrieves the number of features the filter was sized for.
+     *
+     * @return The capacity.
+     */
+    int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Copies the lookup counters of a filter this one replaces.
+     *
+     * @param other The replaced filter.
+     */
+    void inheritCounters(VocabularyFilter other) {
+        this.lookups = other.lookups;
+        this.rejections = other.rejections;
+        this.falsePositives = other.falsePositives;
+    }
+
+    /**
+     * Retrieves the number of features currently in the filter.
+     *
+     * @return The number of known features.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves the number of lookups.
+     *
+     * @return The number of lookups.
+     */
+    public long getLookups() {
+        return this.lookups;
+    }
+
+    /**
+     * Retrieves the number of lookups the filter answered as unseen without
+     * probing the dictionary.
+     *
+     * @return The number of rejections.
+     */
+    public long getRejections() {
+        return this.rejections;
+    }
+
+    /**
+     * Retrieves the number of lookups that passed the filter for a feature
+     * that was not known.
+     *
+     * @return The number of false positives.
+     */
+    public long getFalsePositives() {
+        return this.falsePositives;
+    }
+
+    /**
+     * Retrieves the share of lookups answered without a dictionary probe.
+     *
+     * @return The hit rate between 0 and 1.
+     */
+    public double getHitRate() {
+        return (this.lookups == 0) ? 0 : (double) this.rejections / this.lookups;
+    }
+
+    /**
+     * Retrieves the share of lookups of unknown features the filter let
+     * through.
+     *
+     * @return The false positive rate between 0 and 1.
+     */
+    public double getFalsePositiveRate() {
+        long unknown = this.rejections + this.falsePositives;
+        return (unknown == 0) ? 0 : (double) this.falsePositives / unknown;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "VocabularyFilter [size=" + this.size + ", lookups=" + this.lookups
+                + ", rejections=" + this.rejections
+                + ", falsePositives=" + this.falsePositives + "]";
+    }
+
+    /**
+     * Maps a combined hash to a counter index.
+     *
+     * @param h The hash.
+     * @return The index.
+     */
+    private int index(int h) {
+        return h & (this.counters.length - 1);
+    }
+
+    /**
+     * Spreads the hash code of a feature over all bits.
+     *
+     * @param feature The feature.
+     * @return The spread hash.
+     */
+    private static int hash(Object feature) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Derives the step between the counters of a feature from its hash, for
+     * double hashing.  The step is odd so the counters are distinct.
+     *
+     * @param h The spread hash.
+     * @return The step.
+     */
+    private static int step(int h) {
+        int s = h * 0x85EBCA6B;
+        return (s ^ (s >>> 13)) | 1;
+    }
+
+}
@@ -0,0 +1,79 @@
+package cn.hutao.bayes.vector;
+
+import cn.hutao.bayes.CategoryScorer;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link CategoryScorer} adding and comparing category scores in SIMD lanes
+ * of the preferred vector width, with a scalar tail.  Lane-wise additions are
+ * the same IEEE additions the scalar scorer does, and the argmax first finds
+ * the maximum and then its first occurrence, so results are bit-identical.
+ * Needs the incubating {@code jdk.incubator.vector} module at compile and run
+ * time; use {@link cn.hutao.bayes.CategoryScorers#fastest()} to fall back to
+ * the scalar scorer without it.
+ */
+public final class VectorCategoryScorer implements CategoryScorer {
+
+    /**
+     * The vector shape used.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void accumulate(double[] scores, double[] row, int rowOffset, int from, int to) {
+        int c = from;
+        int upper = from + VectorCategoryScorer.SPECIES.loopBound(to - from);
+        for (; c < upper; c += VectorCategoryScorer.SPECIES.length()) {
+            DoubleVector.fromArray(VectorCategoryScorer.SPECIES, scores, c)
+                    .add(DoubleVector.fromArray(VectorCategoryScorer.SPECIES, row, rowOffset + c))
+                    .intoArray(scores, c);
+        }
+        for (; c < to; c++) {
+            scores[c] += row[rowOffset + c];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int argmax(double[] scores, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int lanes = VectorCategoryScorer.SPECIES.length();
+        int upper = from + VectorCategoryScorer.SPECIES.loopBound(to - from);
+        double max = Double.NEGATIVE_INFINITY;
+        int c = from;
+        if (upper > from) {
+            DoubleVector maxima = DoubleVector.fromArray(VectorCategoryScorer.SPECIES, scores, c);
+            for (c += lanes; c < upper; c += lanes) {
+                maxima = maxima.max(DoubleVector.fromArray(VectorCategoryScorer.SPECIES, scores, c));
+            }
+            max = maxima.reduceLanes(VectorOperators.MAX);
+        }
+        for (; c < to; c++) {
+            max = Math.max(max, scores[c]);
+        }
+
+        for (c = from; c < upper; c += lanes) {
+            int lane = DoubleVector.fromArray(VectorCategoryScorer.SPECIES, scores, c)
+                    .eq(max).firstTrue();
+            if (lane < lanes) {
+                return c + lane;
+            }
+        }
+        for (; c < to; c++) {
+            if (scores[c] == max) {
+                return c;
+            }
+        }
+        return from;
+    }
+
+}
@@ -1,10 +1,9 @@
 package cn.hutao.example;
 
 import java.util.Arrays;
-import java.util.SortedSet;
 
 import cn.hutao.bayes.BayesClassifier;
-import cn.hutao.bayes.Classification;
+import cn.hutao.bayes.ClassificationResult;
 import cn.hutao.bayes.Classifier;
 
 public class BayesExample {
@@ -26,16 +25,14 @@ public class BayesExample {
 
         System.out.println(bayes.classify(Arrays.asList(unknownText1)).getCategory());
 
-        SortedSet<Classification<String, String>> probabilites =
-                (SortedSet<Classification<String, String>>)
-                        ((BayesClassifier<String, String>) bayes).classifyDetailed(Arrays.asList(unknownText1));
+        ClassificationResult<String, String> probabilites =
+                ((BayesClassifier<String, String>) bayes).classifyDetailed(Arrays.asList(unknownText1));
         System.out.print(probabilites + "\n");
 
         System.out.println(bayes.classify(Arrays.asList(unknownText2)).getCategory());
 
         probabilites =
-                (SortedSet<Classification<String, String>>)
-                        ((BayesClassifier<String, String>) bayes).classifyDetailed(Arrays.asList(unknownText2));
+                ((BayesClassifier<String, String>) bayes).classifyDetailed(Arrays.asList(unknownText2));
         System.out.print(probabilites + "\n");
     }
 
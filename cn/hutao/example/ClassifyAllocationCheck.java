@@ -0,0 +1,77 @@
+package cn.hutao.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.ClassificationHolder;
+import cn.hutao.bayes.CountStore;
+import cn.hutao.bayes.DenseCountStore;
+import cn.hutao.bayes.HashCountStore;
+import cn.hutao.bayes.ScoringMode;
+
+/**
+ * Checks that classifying pre-resolved feature ids into a reused
+ * {@link ClassificationHolder} allocates nothing once warmed up, in every
+ * scoring mode and with the hash and the dense store, using the per-thread
+ * allocation counter of the JVM.  Throws an {@link IllegalStateException} if
+ * a call allocates.
+ */
+public class ClassifyAllocationCheck {
+
+    private static final int WARM_UP_CALLS = 200000;
+
+    private static final int MEASURED_CALLS = 100000;
+
+    public static void main(String[] args) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("This JVM does not count allocated bytes per thread");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ClassifyAllocationCheck.run("hash", new HashCountStore(), threads);
+        ClassifyAllocationCheck.run("dense", new DenseCountStore(4), threads);
+    }
+
+    private static void run(String name, CountStore store,
+                            com.sun.management.ThreadMXBean threads) {
+        Random random = new Random(1);
+        BayesClassifier<String, String> classifier = new BayesClassifier<String, String>(store);
+        for (int i = 0; i < 500; i++) {
+            List<String> features = new ArrayList<String>();
+            for (int j = 0; j < 10; j++) {
+                features.add("w" + random.nextInt(300));
+            }
+            classifier.learn("c" + random.nextInt(4), features);
+        }
+        int[] featureIds = classifier.featureIds(Arrays.asList("w1", "w2", "w3", "w50", "unknown"));
+        ClassificationHolder holder = new ClassificationHolder();
+        long thread = Thread.currentThread().getId();
+
+        for (ScoringMode mode : ScoringMode.values()) {
+            classifier.setScoringMode(mode);
+            for (int i = 0; i < ClassifyAllocationCheck.WARM_UP_CALLS; i++) {
+                classifier.classify(featureIds, holder);
+            }
+            long overhead = threads.getThreadAllocatedBytes(thread);
+            overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ClassifyAllocationCheck.MEASURED_CALLS; i++) {
+                classifier.classify(featureIds, holder);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+            System.out.println(String.format("%s, %s: %d bytes in %d calls, %s",
+                    name, mode, allocated, ClassifyAllocationCheck.MEASURED_CALLS, holder));
+            if (allocated > 0) {
+                throw new IllegalStateException("classify(int[], ClassificationHolder) allocated "
+                        + allocated + " bytes with the " + name + " store in " + mode + " mode");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package cn.hutao.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.Classification;
+import cn.hutao.bayes.ConcurrentBayesClassifier;
+
+/**
+ * Stress check of {@link ConcurrentBayesClassifier}: several threads learn
+ * the same synthetic corpus in parallel, classifying as they go, and every
+ * feature, category and total count must then match a sequential
+ * {@link BayesClassifier} exactly, as must the classification scores.
+ * Concurrent decrements of one count must stop at zero.  Throws an
+ * {@link IllegalStateException} on the first mismatch.
+ */
+public class ConcurrentLearningCheck {
+
+    private static final int CATEGORIES = 16;
+
+    private static final int DOCUMENTS = 40000;
+
+    private static final int FEATURES_PER_DOCUMENT = 30;
+
+    private static final int VOCABULARY = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        final List<List<String>> documents = new ArrayList<List<String>>();
+        final List<String> categories = new ArrayList<String>();
+        for (int i = 0; i < ConcurrentLearningCheck.DOCUMENTS; i++) {
+            int category = random.nextInt(ConcurrentLearningCheck.CATEGORIES);
+            List<String> features = new ArrayList<String>();
+            for (int j = 0; j < ConcurrentLearningCheck.FEATURES_PER_DOCUMENT; j++) {
+                features.add("w" + (category * 7 + random.nextInt(200))
+                        % ConcurrentLearningCheck.VOCABULARY);
+            }
+            documents.add(features);
+            categories.add("c" + category);
+        }
+        BayesClassifier<String, String> sequential = new BayesClassifier<String, String>();
+        sequential.setMemoryCapacity(ConcurrentLearningCheck.DOCUMENTS);
+        for (int i = 0; i < ConcurrentLearningCheck.DOCUMENTS; i++) {
+            sequential.learn(categories.get(i), documents.get(i));
+        }
+
+        int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            final ConcurrentBayesClassifier<String, String> concurrent =
+                    new ConcurrentBayesClassifier<String, String>(ConcurrentLearningCheck.CATEGORIES);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            final int stride = threads;
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int first = t;
+                futures.add(executor.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (int i = first; i < ConcurrentLearningCheck.DOCUMENTS; i += stride) {
+                            concurrent.learn(categories.get(i), documents.get(i));
+                            if (i % 97 == 0) {
+                                concurrent.classify(documents.get(i));
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long nanos = System.nanoTime() - start;
+            executor.shutdown();
+            ConcurrentLearningCheck.compare(sequential, concurrent, documents);
+            System.out.println(String.format("%d threads: counts exact, %.1f ms",
+                    threads, nanos / 1e6));
+        }
+
+        final ConcurrentBayesClassifier<String, String> decremented =
+                new ConcurrentBayesClassifier<String, String>(2);
+        for (int i = 0; i < 1000; i++) {
+            decremented.incrementFeature("x", "a");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 400; i++) {
+                        decremented.decrementFeature("x", "a");
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        if (decremented.featureCount("x", "a") != 0
+                || decremented.categoryFeatureCount("a") != 0
+                || decremented.getVocabularySize() != 0) {
+            throw new IllegalStateException("Concurrent decrements went below zero");
+        }
+        System.out.println("1600 concurrent decrements of a count of 1000: count 0");
+    }
+
+    private static void compare(BayesClassifier<String, String> expected,
+                                BayesClassifier<String, String> actual,
+                                List<List<String>> documents) {
+        if (expected.getCategoriesTotal() != actual.getCategoriesTotal()
+                || expected.getVocabularySize() != actual.getVocabularySize()) {
+            throw new IllegalStateException("Totals differ");
+        }
+        for (String category : expected.getCategories()) {
+            if (expected.categoryCount(category) != actual.categoryCount(category)
+                    || expected.categoryFeatureCount(category)
+                            != actual.categoryFeatureCount(category)) {
+                throw new IllegalStateException("Counts of " + category + " differ");
+            }
+            for (String feature : expected.getFeatures()) {
+                if (expected.featureCount(feature, category)
+                        != actual.featureCount(feature, category)) {
+                    throw new IllegalStateException("Count of " + feature + " in "
+                            + category + " differs");
+                }
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            Classification<String, String> x = expected.classify(documents.get(i));
+            Classification<String, String> y = actual.classify(documents.get(i));
+            if (!x.getCategory().equals(y.getCategory())
+                    || x.getProbability() != y.getProbability()) {
+                throw new IllegalStateException("Classification of document " + i + " differs");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package cn.hutao.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.CountStore;
+import cn.hutao.bayes.DenseCountStore;
+import cn.hutao.bayes.FeatureDictionary;
+import cn.hutao.bayes.HashCountStore;
+import cn.hutao.bayes.HashedBayesClassifier;
+import cn.hutao.bayes.OffHeapCountStore;
+
+/**
+ * Checks the totals every count store maintains incrementally.  A random
+ * sequence of learn calls, with collections and with term frequencies, of
+ * forgetting through the example memory and of explicit increments and
+ * decrements runs against each store; after every step the category feature
+ * counts, the categories total and the number of distinct features must
+ * match a full recount of the per-feature counts, and those must match an
+ * independent model of what was learned and forgotten.  Throws an
+ * {@link IllegalStateException} on the first mismatch.
+ */
+public class CountRecountCheck {
+
+    private static final int STEPS = 20000;
+
+    private static final int MEMORY_CAPACITY = 100;
+
+    private static final int CATEGORIES = 6;
+
+    private static final int MANY_CATEGORIES = 40;
+
+    private static final int VOCABULARY = 500;
+
+    public static void main(String[] args) throws Exception {
+        CountRecountCheck.run("hash", new HashCountStore(), CountRecountCheck.CATEGORIES);
+        CountRecountCheck.run("dense", new DenseCountStore(), CountRecountCheck.CATEGORIES);
+        CountRecountCheck.run("dense, growing", new DenseCountStore(1, 3),
+                CountRecountCheck.MANY_CATEGORIES);
+        OffHeapCountStore offHeap = new OffHeapCountStore();
+        try {
+            CountRecountCheck.run("off-heap", offHeap, CountRecountCheck.CATEGORIES);
+        } finally {
+            offHeap.close();
+        }
+        CountRecountCheck.restrideAfterGrowth();
+        CountRecountCheck.hashedIdLearning();
+    }
+
+    /*
+     * A hashed classifier learning through the id paths, with ids from its
+     * own featureIds(), must count exactly what one learning the features
+     * does.
+     */
+    private static void hashedIdLearning() {
+        Random random = new Random(11);
+        HashedBayesClassifier<String, String> byFeatures =
+                new HashedBayesClassifier<String, String>(10);
+        HashedBayesClassifier<String, String> byIds =
+                new HashedBayesClassifier<String, String>(10);
+        for (int step = 0; step < 2000; step++) {
+            String category = "c" + random.nextInt(CountRecountCheck.CATEGORIES);
+            if (random.nextBoolean()) {
+                List<String> features = new ArrayList<String>();
+                for (int i = random.nextInt(12); i > 0; i--) {
+                    features.add(CountRecountCheck.feature(random));
+                }
+                byFeatures.learn(category, features);
+                byIds.learn(category, byIds.featureIds(features));
+            } else {
+                Map<String, Integer> example = new HashMap<String, Integer>();
+                for (int i = random.nextInt(8); i > 0; i--) {
+                    example.put(CountRecountCheck.feature(random), 1 + random.nextInt(4));
+                }
+                List<String> features = new ArrayList<String>(example.keySet());
+                int[] counts = new int[features.size()];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = example.get(features.get(i));
+                }
+                byFeatures.learn(category, example);
+                byIds.learn(category, byIds.featureIds(features), counts);
+            }
+        }
+        int numCategories = byFeatures.getCategoryDictionary().size();
+        for (int bucket = 0; bucket < byFeatures.getBucketCount(); bucket++) {
+            for (int categoryId = 0; categoryId < numCategories; categoryId++) {
+                if (byFeatures.featureCount(bucket, categoryId)
+                        != byIds.featureCount(bucket, categoryId)) {
+                    throw new IllegalStateException("Hashed id learning differs in bucket "
+                            + bucket);
+                }
+            }
+        }
+        if (byFeatures.getCategoriesTotal() != byIds.getCategoriesTotal()
+                || byFeatures.getVocabularySize() != byIds.getVocabularySize()) {
+            throw new IllegalStateException("Hashed id learning totals differ");
+        }
+        System.out.println("hashed: learning by ids counts the same as learning by features");
+    }
+
+    /*
+     * A dense store that grew for a high feature id and then widens its rows
+     * for new categories must keep the count of that feature.
+     */
+    private static void restrideAfterGrowth() {
+        BayesClassifier<String, String> classifier =
+                new BayesClassifier<String, String>(new DenseCountStore());
+        for (int i = 0; i < 5000; i++) {
+            classifier.getFeatureDictionary().intern("w" + i);
+        }
+        classifier.learn("a", Arrays.asList("w4999"));
+        for (int i = 0; i < 8; i++) {
+            classifier.learn("b" + i, Arrays.asList("w0"));
+        }
+        if (classifier.featureCount("w4999", "a") != 1
+                || classifier.categoryFeatureCount("a") != 1
+                || classifier.getVocabularySize() != 2) {
+            throw new IllegalStateException("Widening the dense rows lost the count of w4999");
+        }
+        System.out.println("dense: counts kept when the rows widen after growing");
+    }
+
+    private static void run(String name, CountStore store, int numCategories) {
+        Random random = new Random(7);
+        BayesClassifier<String, String> classifier = new BayesClassifier<String, String>(store);
+        classifier.setMemoryCapacity(CountRecountCheck.MEMORY_CAPACITY);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        Map<String, Integer> expectedCategories = new HashMap<String, Integer>();
+        Deque<Map<String, Integer>> memory = new ArrayDeque<Map<String, Integer>>();
+        Deque<String> memoryCategories = new ArrayDeque<String>();
+
+        for (int step = 0; step < CountRecountCheck.STEPS; step++) {
+            String category = "c" + random.nextInt(numCategories);
+            int action = random.nextInt(10);
+            if (action < 7) {
+                Map<String, Integer> example = new HashMap<String, Integer>();
+                if (action < 4) {
+                    List<String> features = new ArrayList<String>();
+                    for (int i = random.nextInt(12); i > 0; i--) {
+                        String feature = CountRecountCheck.feature(random);
+                        features.add(feature);
+                        CountRecountCheck.add(example, feature, 1);
+                    }
+                    classifier.learn(category, features);
+                } else {
+                    for (int i = random.nextInt(8); i > 0; i--) {
+                        String feature = CountRecountCheck.feature(random);
+                        if (!example.containsKey(feature)) {
+                            example.put(feature, 1 + random.nextInt(4));
+                        }
+                    }
+                    classifier.learn(category, example);
+                }
+                for (Map.Entry<String, Integer> entry : example.entrySet()) {
+                    CountRecountCheck.add(expected, entry.getKey() + "/" + category,
+                            entry.getValue());
+                }
+                CountRecountCheck.add(expectedCategories, category, 1);
+                memory.addLast(example);
+                memoryCategories.addLast(category);
+                if (memory.size() > CountRecountCheck.MEMORY_CAPACITY) {
+                    String forgotten = memoryCategories.removeFirst();
+                    for (Map.Entry<String, Integer> entry : memory.removeFirst().entrySet()) {
+                        CountRecountCheck.remove(expected, entry.getKey() + "/" + forgotten,
+                                entry.getValue());
+                    }
+                    CountRecountCheck.remove(expectedCategories, forgotten, 1);
+                }
+            } else if (action == 7) {
+                String feature = CountRecountCheck.feature(random);
+                classifier.incrementFeature(feature, category);
+                CountRecountCheck.add(expected, feature + "/" + category, 1);
+            } else if (action == 8) {
+                String feature = CountRecountCheck.feature(random);
+                classifier.decrementFeature(feature, category);
+                CountRecountCheck.remove(expected, feature + "/" + category, 1);
+            } else {
+                classifier.decrementCategory(category);
+                CountRecountCheck.remove(expectedCategories, category, 1);
+            }
+            CountRecountCheck.recount(classifier, expected, expectedCategories, step);
+        }
+        System.out.println(String.format("%s: %d steps, totals match the recount after every step",
+                name, CountRecountCheck.STEPS));
+    }
+
+    private static String feature(Random random) {
+        return "w" + random.nextInt(CountRecountCheck.VOCABULARY);
+    }
+
+    private static void add(Map<String, Integer> counts, String key, int n) {
+        Integer count = counts.get(key);
+        counts.put(key, (count == null) ? n : count + n);
+    }
+
+    private static void remove(Map<String, Integer> counts, String key, int n) {
+        Integer count = counts.get(key);
+        if (count != null) {
+            if (count <= n) {
+                counts.remove(key);
+            } else {
+                counts.put(key, count - n);
+            }
+        }
+    }
+
+    private static void recount(BayesClassifier<String, String> classifier,
+                                Map<String, Integer> expected,
+                                Map<String, Integer> expectedCategories, int step) {
+        FeatureDictionary<String> features = classifier.getFeatureDictionary();
+        FeatureDictionary<String> categories = classifier.getCategoryDictionary();
+        long[] categoryFeatureCounts = new long[categories.size()];
+        long categoriesTotal = 0;
+        int distinctFeatures = 0;
+        int pairs = 0;
+        for (int featureId = 0; featureId < features.size(); featureId++) {
+            long total = 0;
+            for (int categoryId = 0; categoryId < categories.size(); categoryId++) {
+                int count = classifier.featureCount(featureId, categoryId);
+                Integer model = expected.get(features.feature(featureId) + "/"
+                        + categories.feature(categoryId));
+                if (count != ((model == null) ? 0 : model)) {
+                    throw new IllegalStateException("Step " + step + ": count of "
+                            + features.feature(featureId) + " in " + categories.feature(categoryId)
+                            + " is " + count + ", expected " + model);
+                }
+                if (count > 0) {
+                    pairs++;
+                }
+                total += count;
+                categoryFeatureCounts[categoryId] += count;
+            }
+            if (total != classifier.totalFeatureCount(featureId)) {
+                throw new IllegalStateException("Step " + step + ": total of "
+                        + features.feature(featureId) + " is "
+                        + classifier.totalFeatureCount(featureId) + ", recounted " + total);
+            }
+            if (total > 0) {
+                distinctFeatures++;
+            }
+        }
+        if (pairs != expected.size()) {
+            throw new IllegalStateException("Step " + step + ": " + pairs
+                    + " counted pairs, expected " + expected.size());
+        }
+        for (int categoryId = 0; categoryId < categories.size(); categoryId++) {
+            if (categoryFeatureCounts[categoryId] != classifier.categoryFeatureCount(categoryId)) {
+                throw new IllegalStateException("Step " + step + ": categoryFeatureCount of "
+                        + categories.feature(categoryId) + " is "
+                        + classifier.categoryFeatureCount(categoryId) + ", recounted "
+                        + categoryFeatureCounts[categoryId]);
+            }
+            Integer model = expectedCategories.get(categories.feature(categoryId));
+            if (classifier.categoryCount(categoryId) != ((model == null) ? 0 : model)) {
+                throw new IllegalStateException("Step " + step + ": count of category "
+                        + categories.feature(categoryId) + " is "
+                        + classifier.categoryCount(categoryId) + ", expected " + model);
+            }
+            categoriesTotal += classifier.categoryCount(categoryId);
+        }
+        if (categoriesTotal != classifier.getCategoriesTotal()) {
+            throw new IllegalStateException("Step " + step + ": categoriesTotal is "
+                    + classifier.getCategoriesTotal() + ", recounted " + categoriesTotal);
+        }
+        if (distinctFeatures != classifier.getVocabularySize()) {
+            throw new IllegalStateException("Step " + step + ": distinctFeatureCount is "
+                    + classifier.getVocabularySize() + ", recounted " + distinctFeatures);
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package cn.hutao.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.CategoryScorer;
+import cn.hutao.bayes.CategoryScorers;
+import cn.hutao.bayes.DenseCountStore;
+
+/**
+ * Compares batch classification with the scalar and the Vector API category
+ * scorers at 16, 256 and 4096 categories.  Run with
+ * {@code --add-modules jdk.incubator.vector}, otherwise only the scalar
+ * scorer is measured.
+ */
+public class ScorerBenchmark {
+
+    private static final int[] CATEGORY_COUNTS = {16, 256, 4096};
+
+    private static final int VOCABULARY = 200;
+
+    private static final int DOCUMENTS = 500;
+
+    private static final int FEATURES_PER_DOCUMENT = 40;
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        CategoryScorer vector = CategoryScorers.vector();
+        if (vector == null) {
+            System.out.println("Vector API not available, measuring the scalar scorer only");
+        }
+        for (int numCategories : ScorerBenchmark.CATEGORY_COUNTS) {
+            Random random = new Random(numCategories);
+            BayesClassifier<String, String> bayes =
+                    new BayesClassifier<String, String>(new DenseCountStore(numCategories));
+            bayes.setMemoryCapacity(numCategories * 4);
+            for (int i = 0; i < numCategories * 4; i++) {
+                bayes.learn("c" + (i % numCategories), ScorerBenchmark.document(random));
+            }
+            List<Collection<String>> batch = new ArrayList<Collection<String>>();
+            for (int i = 0; i < ScorerBenchmark.DOCUMENTS; i++) {
+                batch.add(ScorerBenchmark.document(random));
+            }
+
+            bayes.setCategoryScorer(CategoryScorers.scalar());
+            int[] expected = bayes.classifyAll(batch);
+            double scalarMillis = ScorerBenchmark.time(bayes, batch);
+            String line = numCategories + " categories: scalar " + format(scalarMillis);
+            if (vector != null) {
+                bayes.setCategoryScorer(vector);
+                if (!Arrays.equals(expected, bayes.classifyAll(batch))) {
+                    throw new IllegalStateException("Scorers disagree at "
+                            + numCategories + " categories");
+                }
+                double vectorMillis = ScorerBenchmark.time(bayes, batch);
+                line += ", vector " + format(vectorMillis)
+                        + String.format(", speedup %.2fx", scalarMillis / vectorMillis);
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static List<String> document(Random random) {
+        List<String> features = new ArrayList<String>(ScorerBenchmark.FEATURES_PER_DOCUMENT);
+        for (int i = 0; i < ScorerBenchmark.FEATURES_PER_DOCUMENT; i++) {
+            features.add("w" + random.nextInt(ScorerBenchmark.VOCABULARY));
+        }
+        return features;
+    }
+
+    private static double time(BayesClassifier<String, String> bayes,
+                               List<Collection<String>> batch) {
+        for (int i = 0; i < ScorerBenchmark.ROUNDS; i++) {
+            bayes.classifyAll(batch);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ScorerBenchmark.ROUNDS; i++) {
+            bayes.classifyAll(batch);
+        }
+        return (System.nanoTime() - start) / 1e6 / ScorerBenchmark.ROUNDS;
+    }
+
+    private static String format(double millis) {
+        return String.format("%.2f ms/batch", millis);
+    }
+
+}
@@ -0,0 +1,135 @@
+package cn.hutao.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.BulkFeatureProbability;
+import cn.hutao.bayes.Classification;
+import cn.hutao.bayes.FrozenBayesModel;
+import cn.hutao.bayes.HashedBayesClassifier;
+import cn.hutao.bayes.ScoringMode;
+import cn.hutao.bayes.SnapshotBayesClassifier;
+
+/**
+ * Checks {@link SnapshotBayesClassifier}: after every publish, classifying
+ * with the snapshot must give exactly the scores of a model frozen from a
+ * classifier that learned the same documents, in every scoring mode, with a
+ * custom calculator and with a hashed writer.  A hashed writer must publish
+ * incrementally, so a publish after a few learn calls must take a small
+ * fraction of the time a full copy of its buckets takes.  Throws an
+ * {@link IllegalStateException} on the first mismatch.
+ */
+public class SnapshotCheck {
+
+    private static final int DOCUMENTS = 3000;
+
+    private static final int PUBLISH_THRESHOLD = 7;
+
+    private static final int HASH_BITS = 12;
+
+    private static final int LARGE_HASH_BITS = 22;
+
+    public static void main(String[] args) {
+        for (ScoringMode mode : ScoringMode.values()) {
+            SnapshotCheck.run(mode.toString(), new BayesClassifier<String, String>(),
+                    new BayesClassifier<String, String>(), mode, null);
+        }
+        SnapshotCheck.run("calculator", new BayesClassifier<String, String>(),
+                new BayesClassifier<String, String>(), ScoringMode.RATIO,
+                new BulkFeatureProbability<String, String>() {
+
+                    @Override
+                    public void featureLogProbabilities(String feature,
+                                                        double[] logProbabilities) {
+                        for (int i = 0; i < logProbabilities.length; i++) {
+                            logProbabilities[i] = -(((feature.hashCode() * 31) + i) & 15) / 4.0;
+                        }
+                    }
+                });
+        SnapshotCheck.run("hashed", new HashedBayesClassifier<String, String>(SnapshotCheck.HASH_BITS),
+                new HashedBayesClassifier<String, String>(SnapshotCheck.HASH_BITS),
+                ScoringMode.LOG_TABLE, null);
+        SnapshotCheck.hashedPublishCost();
+    }
+
+    private static void run(String name, BayesClassifier<String, String> writer,
+                            BayesClassifier<String, String> mirror, ScoringMode mode,
+                            BulkFeatureProbability<String, String> calculator) {
+        Random random = new Random(5);
+        writer.setMemoryCapacity(300);
+        mirror.setMemoryCapacity(300);
+        writer.setScoringMode(mode);
+        mirror.setScoringMode(mode);
+        if (calculator != null) {
+            writer.setFeatureProbability(calculator);
+            mirror.setFeatureProbability(calculator);
+        }
+        SnapshotBayesClassifier<String, String> snapshots =
+                new SnapshotBayesClassifier<String, String>(writer,
+                        SnapshotCheck.PUBLISH_THRESHOLD, 0);
+        int checks = 0;
+        for (int i = 0; i < SnapshotCheck.DOCUMENTS; i++) {
+            List<String> features = SnapshotCheck.document(random, 10, i / 3 + 5);
+            String category = "c" + random.nextInt(1 + i / 500);
+            snapshots.learn(category, features);
+            mirror.learn(category, features);
+            if (snapshots.getPendingLearns() > 0) {
+                continue;
+            }
+            FrozenBayesModel<String, String> expected = mirror.freeze();
+            for (int k = 0; k < 20; k++) {
+                List<String> query = SnapshotCheck.document(random, 8, i / 3 + 20);
+                Classification<String, String> x = expected.classify(query);
+                Classification<String, String> y = snapshots.classify(query);
+                if (!x.getCategory().equals(y.getCategory())
+                        || x.getProbability() != y.getProbability()) {
+                    throw new IllegalStateException(name + ": snapshot " + snapshots.getEpoch()
+                            + " scores " + y + ", the frozen model " + x);
+                }
+                checks++;
+            }
+        }
+        System.out.println(String.format("%s: %d classifications match the frozen model",
+                name, checks));
+    }
+
+    /*
+     * Publishing after a few learn calls copies the changed buckets only, so
+     * it must be far cheaper than the full copy of all buckets the first
+     * snapshot takes.
+     */
+    private static void hashedPublishCost() {
+        Random random = new Random(9);
+        HashedBayesClassifier<String, String> writer =
+                new HashedBayesClassifier<String, String>(SnapshotCheck.LARGE_HASH_BITS);
+        for (int i = 0; i < 20000; i++) {
+            writer.learn("c" + random.nextInt(4), SnapshotCheck.document(random, 20, 1000000));
+        }
+        long start = System.nanoTime();
+        SnapshotBayesClassifier<String, String> snapshots =
+                new SnapshotBayesClassifier<String, String>(writer, 1, 0);
+        long fullCopy = System.nanoTime() - start;
+        int publishes = 200;
+        start = System.nanoTime();
+        for (int i = 0; i < publishes; i++) {
+            snapshots.learn("c" + random.nextInt(4), SnapshotCheck.document(random, 20, 1000000));
+        }
+        long perPublish = (System.nanoTime() - start) / publishes;
+        System.out.println(String.format("hashed, %d buckets: full copy %.2f ms, publish %.3f ms",
+                1 << SnapshotCheck.LARGE_HASH_BITS, fullCopy / 1e6, perPublish / 1e6));
+        if (perPublish * 10 > fullCopy) {
+            throw new IllegalStateException("A hashed writer copies all buckets on every publish");
+        }
+    }
+
+    private static List<String> document(Random random, int length, int vocabulary) {
+        List<String> features = new ArrayList<String>();
+        for (int j = 0; j < length; j++) {
+            features.add("w" + random.nextInt(vocabulary));
+        }
+        return features;
+    }
+
+}
@@ -0,0 +1,101 @@
+package cn.hutao.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import cn.hutao.bayes.BayesClassifier;
+import cn.hutao.bayes.Classification;
+import cn.hutao.bayes.ParallelTrainer;
+import cn.hutao.bayes.TrainingReport;
+
+/**
+ * Compares training a classifier with a single-threaded learn loop against
+ * the {@link ParallelTrainer} on 1, 2, 4, ... worker threads up to the
+ * number of cores, on a synthetic corpus, and checks that every run learns
+ * the same counts.  On a single core only the one-thread run takes place,
+ * which measures the cost of sharding and merging rather than any speedup.
+ */
+public class TrainerBenchmark {
+
+    private static final int DOCUMENTS = 200000;
+
+    private static final int CATEGORIES = 20;
+
+    private static final int VOCABULARY = 20000;
+
+    private static final int FEATURES_PER_DOCUMENT = 40;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        List<Classification<String, String>> corpus =
+                new ArrayList<Classification<String, String>>(TrainerBenchmark.DOCUMENTS);
+        for (int i = 0; i < TrainerBenchmark.DOCUMENTS; i++) {
+            int category = random.nextInt(TrainerBenchmark.CATEGORIES);
+            List<String> features = new ArrayList<String>(TrainerBenchmark.FEATURES_PER_DOCUMENT);
+            for (int j = 0; j < TrainerBenchmark.FEATURES_PER_DOCUMENT; j++) {
+                features.add("w" + (category * 97 + random.nextInt(TrainerBenchmark.VOCABULARY / 4))
+                        % TrainerBenchmark.VOCABULARY);
+            }
+            corpus.add(new Classification<String, String>(features, "c" + category));
+        }
+
+        BayesClassifier<String, String> sequential = null;
+        long sequentialNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 2; round++) {
+            sequential = new BayesClassifier<String, String>();
+            sequential.setMemoryCapacity(TrainerBenchmark.DOCUMENTS);
+            long start = System.nanoTime();
+            for (Classification<String, String> example : corpus) {
+                sequential.learn(example);
+            }
+            sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+        }
+        System.out.println(String.format("learn loop: %.1f ms", sequentialNanos / 1e6));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("%d cores available", cores));
+        for (int threads = 1; threads <= cores; threads <<= 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelTrainer<String, String> trainer = new ParallelTrainer<String, String>(pool);
+            TrainingReport report = null;
+            BayesClassifier<String, String> parallel = null;
+            for (int round = 0; round < 2; round++) {
+                parallel = new BayesClassifier<String, String>();
+                TrainingReport run = trainer.train(corpus.spliterator(), parallel);
+                if (report == null || run.getTotalNanos() < report.getTotalNanos()) {
+                    report = run;
+                }
+            }
+            pool.shutdown();
+            TrainerBenchmark.compare(sequential, parallel);
+            System.out.println(String.format("%d threads: %.1f ms, speedup %.2fx, %s",
+                    threads, report.getTotalNanos() / 1e6,
+                    (double) sequentialNanos / report.getTotalNanos(), report));
+        }
+    }
+
+    private static void compare(BayesClassifier<String, String> expected,
+                                BayesClassifier<String, String> actual) {
+        if (expected.getCategoriesTotal() != actual.getCategoriesTotal()
+                || expected.getVocabularySize() != actual.getVocabularySize()) {
+            throw new IllegalStateException("Totals differ");
+        }
+        for (String category : expected.getCategories()) {
+            if (expected.categoryCount(category) != actual.categoryCount(category)
+                    || expected.categoryFeatureCount(category)
+                            != actual.categoryFeatureCount(category)) {
+                throw new IllegalStateException("Counts of " + category + " differ");
+            }
+            for (String feature : expected.getFeatures()) {
+                if (expected.featureCount(feature, category)
+                        != actual.featureCount(feature, category)) {
+                    throw new IllegalStateException("Count of " + feature + " in "
+                            + category + " differs");
+                }
+            }
+        }
+    }
+
+}